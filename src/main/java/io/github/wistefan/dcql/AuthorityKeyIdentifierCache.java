@@ -0,0 +1,107 @@
+package io.github.wistefan.dcql;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the authority key identifiers extracted from certificates. Certificates are compared by their
+ * encoding, thus equal certificates parsed from different credentials share an entry. Once the cache is full, the
+ * least recently used entries are evicted.
+ * <p>
+ * Lookups do not lock. Instead of reordering the entries, a hit only records the current insertion count on the entry,
+ * thus hits between two insertions are not ordered among each other and the eviction is an approximation of LRU. Only
+ * insertions and evictions are done under the lock.
+ */
+final class AuthorityKeyIdentifierCache {
+
+    // a full cache evicts this fraction of its entries at once, to not scan all entries on every miss
+    private static final int EVICTION_FRACTION = 16;
+
+    private final int maxSize;
+    private final Function<X509Certificate, Optional<KeyIdentifier>> extractor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<X509Certificate, Entry> entries = new ConcurrentHashMap<>();
+    // advanced by every insertion, recorded by every access
+    private final AtomicLong clock = new AtomicLong();
+
+    AuthorityKeyIdentifierCache(int maxSize, Function<X509Certificate, Optional<KeyIdentifier>> extractor) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The cache needs to hold at least one entry.");
+        }
+        this.maxSize = maxSize;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Returns the authority key identifier of the certificate, only extracting it if it is not cached.
+     */
+    Optional<KeyIdentifier> get(X509Certificate certificate) {
+        Entry entry = entries.get(certificate);
+        if (entry != null) {
+            entry.touch(clock.get());
+            return entry.keyIdentifier;
+        }
+        // extract outside the lock, concurrent misses on the same certificate only do duplicate work
+        // certificates without (valid) aki are cached as empty, to not parse them again
+        Optional<KeyIdentifier> keyIdentifier = extractor.apply(certificate);
+        lock.lock();
+        try {
+            Entry existing = entries.get(certificate);
+            if (existing != null) {
+                return existing.keyIdentifier;
+            }
+            if (entries.size() >= maxSize) {
+                evictLeastRecentlyUsed();
+            }
+            entries.put(certificate, new Entry(keyIdentifier, clock.getAndIncrement()));
+        } finally {
+            lock.unlock();
+        }
+        return keyIdentifier;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    // only called under the lock
+    private void evictLeastRecentlyUsed() {
+        // snapshot the access times, since hits keep updating them while sorting
+        List<EvictionCandidate> candidates = new ArrayList<>(entries.size());
+        entries.forEach((certificate, entry) -> candidates.add(new EvictionCandidate(certificate, entry.lastAccess)));
+        candidates.sort(Comparator.comparingLong(EvictionCandidate::lastAccess));
+        int toEvict = Math.max(1, Math.min(maxSize / EVICTION_FRACTION, candidates.size()));
+        for (int i = 0; i < toEvict; i++) {
+            entries.remove(candidates.get(i).certificate());
+        }
+    }
+
+    private record EvictionCandidate(X509Certificate certificate, long lastAccess) {
+    }
+
+    private static final class Entry {
+
+        private final Optional<KeyIdentifier> keyIdentifier;
+        private volatile long lastAccess;
+
+        private Entry(Optional<KeyIdentifier> keyIdentifier, long lastAccess) {
+            this.keyIdentifier = keyIdentifier;
+            this.lastAccess = lastAccess;
+        }
+
+        private void touch(long now) {
+            // only write if it changes, to not invalidate the cache line of frequently read entries
+            if (lastAccess < now) {
+                lastAccess = now;
+            }
+        }
+    }
+}
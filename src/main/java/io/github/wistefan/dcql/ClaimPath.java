@@ -0,0 +1,167 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+import io.github.wistefan.dcql.model.credential.Disclosure;
+import io.github.wistefan.dcql.model.credential.RevealedArray;
+import io.github.wistefan.dcql.model.credential.RevealedObject;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a claims path pointer{@see https://openid.net/specs/openid-4-verifiable-presentations-1_0.html#name-claims-path-pointer}.
+ * Every component of the path is translated into a specialized step once, so that evaluation does not need to
+ * interpret the raw path.
+ */
+public final class ClaimPath {
+
+    /**
+     * The original path, as provided in the {@link ClaimsQuery}
+     */
+    @Getter
+    private final List<Object> components;
+
+    private final Step[] steps;
+
+    private ClaimPath(List<Object> components, Step[] steps) {
+        this.components = components;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile the given path. Fails with an {@link IllegalArgumentException} if the path is empty or contains invalid
+     * components.
+     */
+    public static ClaimPath compile(List<Object> path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("The claims path must not be null or empty.");
+        }
+        Step[] steps = new Step[path.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = toStep(path.get(i));
+        }
+        return new ClaimPath(path, steps);
+    }
+
+    public int length() {
+        return steps.length;
+    }
+
+    Step step(int position) {
+        return steps[position];
+    }
+
+    private static Step toStep(Object component) {
+        if (component == null) {
+            return WildcardStep.INSTANCE;
+        }
+        if (component instanceof String key) {
+            return new KeyStep(key);
+        }
+        if (component instanceof Number number
+                && (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte)
+                && number.longValue() >= 0 && number.longValue() <= Integer.MAX_VALUE) {
+            return new IndexStep(number.intValue());
+        }
+        throw new IllegalArgumentException("Invalid claim path component: " + component);
+    }
+
+    /**
+     * A single component of the path, selecting elements from a candidate.
+     */
+    abstract static class Step {
+
+        /**
+         * Add the elements selected from the candidate to the selection. Elements that are not revealed by a disclosure
+         * of their own are added with the hash of the disclosure the candidate was revealed by, since they cannot be
+         * presented without it. Returns false if the candidate is of a type that cannot be processed by the step.
+         */
+        abstract boolean select(Object candidate, String candidateHash, ClaimsEvaluator.Selection selection);
+    }
+
+    /**
+     * Selects the value of a key from an object.
+     */
+    static final class KeyStep extends Step {
+
+        private final String key;
+
+        KeyStep(String key) {
+            this.key = key;
+        }
+
+        @Override
+        boolean select(Object candidate, String candidateHash, ClaimsEvaluator.Selection selection) {
+            if (!(candidate instanceof Map<?, ?> map)) {
+                return false;
+            }
+            // revealed claims are selected together with the hash of their disclosure
+            if (candidate instanceof RevealedObject revealedObject) {
+                Disclosure disclosure = revealedObject.getDisclosure(key);
+                if (disclosure != null) {
+                    selection.add(disclosure.getValue(), disclosure.getSdHash());
+                    return true;
+                }
+            }
+            Object value = map.get(key);
+            if (value != null || map.containsKey(key)) {
+                selection.add(value, candidateHash);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Selects the element at a position of an array.
+     */
+    static final class IndexStep extends Step {
+
+        private final int index;
+
+        IndexStep(int index) {
+            this.index = index;
+        }
+
+        @Override
+        boolean select(Object candidate, String candidateHash, ClaimsEvaluator.Selection selection) {
+            if (!(candidate instanceof List<?> list)) {
+                return false;
+            }
+            if (index < list.size()) {
+                selection.add(list.get(index), sdHash(list, index, candidateHash));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Selects all elements of an array.
+     */
+    static final class WildcardStep extends Step {
+
+        static final WildcardStep INSTANCE = new WildcardStep();
+
+        @Override
+        boolean select(Object candidate, String candidateHash, ClaimsEvaluator.Selection selection) {
+            if (!(candidate instanceof List<?> list)) {
+                return false;
+            }
+            for (int i = 0; i < list.size(); i++) {
+                selection.add(list.get(i), sdHash(list, i, candidateHash));
+            }
+            return true;
+        }
+    }
+
+    // revealed elements are selected together with the hash of their disclosure
+    private static String sdHash(List<?> list, int index, String candidateHash) {
+        if (list instanceof RevealedArray revealedArray) {
+            Disclosure disclosure = revealedArray.getDisclosure(index);
+            if (disclosure != null) {
+                return disclosure.getSdHash();
+            }
+        }
+        return candidateHash;
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.wistefan.dcql;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The paths of multiple claims queries, merged into a trie. Shared prefixes(e.g. "credentialSubject" or
+ * "namespaces/org.iso.18013.5.1") become shared nodes, thus all claims can be evaluated in a single traversal of a
+ * credential.
+ */
+public final class ClaimPathTrie {
+
+    // key of wildcard components, since the trie nodes are keyed by the path components
+    private static final Object WILDCARD = new Object();
+
+    /**
+     * The claims queries contained in the trie.
+     */
+    private final List<CompiledClaimsQuery> claims;
+
+    private final Node root;
+
+    private ClaimPathTrie(List<CompiledClaimsQuery> claims, Node root) {
+        this.claims = claims;
+        this.root = root;
+    }
+
+    /**
+     * Merge the paths of the given claims queries into a trie.
+     */
+    public static ClaimPathTrie compile(List<CompiledClaimsQuery> claims) {
+        NodeBuilder rootBuilder = new NodeBuilder(null);
+        for (CompiledClaimsQuery claim : claims) {
+            ClaimPath path = claim.getPath();
+            NodeBuilder current = rootBuilder;
+            for (int i = 0; i < path.length(); i++) {
+                ClaimPath.Step step = path.step(i);
+                current = current.children.computeIfAbsent(toKey(path.getComponents().get(i)), k -> new NodeBuilder(step));
+            }
+            current.terminals.add(claim);
+        }
+        return new ClaimPathTrie(List.copyOf(claims), rootBuilder.build());
+    }
+
+    public List<CompiledClaimsQuery> getClaims() {
+        return claims;
+    }
+
+    public boolean isEmpty() {
+        return claims.isEmpty();
+    }
+
+    /**
+     * Number of path steps evaluated by a traversal, i.e. the number of nodes below the root.
+     */
+    public int size() {
+        return root.subtreeSize - 1;
+    }
+
+    /**
+     * Returns true if at least one of the claims queries contains values.
+     */
+    public boolean containsValues() {
+        return claims.stream().anyMatch(CompiledClaimsQuery::containsValues);
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    // index components of different number types select the same element
+    private static Object toKey(Object component) {
+        if (component == null) {
+            return WILDCARD;
+        }
+        if (component instanceof Number number) {
+            return number.intValue();
+        }
+        return component;
+    }
+
+    /**
+     * A step in the trie. Terminals are the claims queries, whose path ends at the node.
+     */
+    static final class Node {
+
+        final ClaimPath.Step step;
+        final Node[] children;
+        final CompiledClaimsQuery[] terminals;
+        final int subtreeSize;
+
+        private Node(ClaimPath.Step step, Node[] children, CompiledClaimsQuery[] terminals) {
+            this.step = step;
+            this.children = children;
+            this.terminals = terminals;
+            int size = 1;
+            for (Node child : children) {
+                size += child.subtreeSize;
+            }
+            this.subtreeSize = size;
+        }
+    }
+
+    private static final class NodeBuilder {
+
+        private final ClaimPath.Step step;
+        // keeps the order of the claims, so that traversal order is stable
+        private final Map<Object, NodeBuilder> children = new LinkedHashMap<>();
+        private final List<CompiledClaimsQuery> terminals = new ArrayList<>();
+
+        private NodeBuilder(ClaimPath.Step step) {
+            this.step = step;
+        }
+
+        private Node build() {
+            Node[] childNodes = children.values().stream().map(NodeBuilder::build).toArray(Node[]::new);
+            return new Node(step, childNodes, terminals.toArray(CompiledClaimsQuery[]::new));
+        }
+    }
+}
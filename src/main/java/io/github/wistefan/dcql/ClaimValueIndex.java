@@ -0,0 +1,139 @@
+package io.github.wistefan.dcql;
+
+import java.util.*;
+
+/**
+ * Inverted index from a concrete claim path and a value to the positions of the credentials containing it. Only
+ * scalar values(strings, numbers, booleans and null) are indexed, numbers are normalized the same way as by the
+ * {@link ValueMatcher}.
+ */
+final class ClaimValueIndex {
+
+    // protects against excessively deep credentials. Deeper claims are not indexed and left to the traversal.
+    private static final int MAX_DEPTH = 32;
+    // key for claims that are explicitly null
+    private static final Object NULL_VALUE = new Object();
+
+    private final Map<List<Object>, Map<Object, BitSet>> index = new HashMap<>();
+
+    /**
+     * Index all scalar claims of the credential.
+     */
+    void add(int position, Map<String, Object> claims) {
+        if (claims != null) {
+            updateClaims(position, claims, new ArrayList<>(), true);
+        }
+    }
+
+    /**
+     * Remove the position from the entries of all scalar claims of the credential. The claims need to be the same as
+     * when they were added.
+     */
+    void remove(int position, Map<String, Object> claims) {
+        if (claims != null) {
+            updateClaims(position, claims, new ArrayList<>(), false);
+        }
+    }
+
+    /**
+     * Returns true if the claims query is answered exactly by {@link #lookup(CompiledClaimsQuery)}: it contains only
+     * scalar values and a concrete path that is not deeper than the indexed claims.
+     */
+    static boolean resolves(CompiledClaimsQuery claimsQuery) {
+        if (!claimsQuery.containsValues() || claimsQuery.getPath().length() > MAX_DEPTH) {
+            return false;
+        }
+        for (Object component : claimsQuery.getPath().getComponents()) {
+            if (component == null) {
+                return false;
+            }
+        }
+        for (Object value : claimsQuery.getValues()) {
+            if (!isScalar(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the positions of the credentials fulfilling the claims query. Null if the query cannot be answered by the
+     * index, see {@link #resolves(CompiledClaimsQuery)}.
+     */
+    BitSet lookup(CompiledClaimsQuery claimsQuery) {
+        if (!resolves(claimsQuery)) {
+            return null;
+        }
+        List<Object> path = new ArrayList<>(claimsQuery.getPath().length());
+        for (Object component : claimsQuery.getPath().getComponents()) {
+            // indexes are always stored as integers
+            path.add(component instanceof Number number ? (Object) number.intValue() : component);
+        }
+        BitSet positions = new BitSet();
+        Map<Object, BitSet> byValue = index.get(path);
+        if (byValue == null) {
+            return positions;
+        }
+        for (Object value : claimsQuery.getValues()) {
+            BitSet valuePositions = byValue.get(key(value));
+            if (valuePositions != null) {
+                positions.or(valuePositions);
+            }
+        }
+        return positions;
+    }
+
+    void clear() {
+        index.clear();
+    }
+
+    private void updateClaims(int position, Object claim, List<Object> path, boolean add) {
+        if (path.size() > MAX_DEPTH) {
+            return;
+        }
+        if (claim instanceof Map<?, ?> claimMap) {
+            for (Map.Entry<?, ?> entry : claimMap.entrySet()) {
+                if (entry.getKey() instanceof String key) {
+                    path.add(key);
+                    updateClaims(position, entry.getValue(), path, add);
+                    path.remove(path.size() - 1);
+                }
+            }
+        } else if (claim instanceof List<?> claimList) {
+            for (int i = 0; i < claimList.size(); i++) {
+                path.add(i);
+                updateClaims(position, claimList.get(i), path, add);
+                path.remove(path.size() - 1);
+            }
+        } else if (isScalar(claim) && !path.isEmpty()) {
+            Map<Object, BitSet> byValue = index.get(path);
+            if (add) {
+                if (byValue == null) {
+                    byValue = new HashMap<>();
+                    index.put(List.copyOf(path), byValue);
+                }
+                byValue.computeIfAbsent(key(claim), k -> new BitSet()).set(position);
+            } else if (byValue != null) {
+                BitSet positions = byValue.get(key(claim));
+                if (positions != null) {
+                    positions.clear(position);
+                    // drop empty entries, to not keep the values of removed credentials
+                    if (positions.isEmpty()) {
+                        byValue.remove(key(claim));
+                        if (byValue.isEmpty()) {
+                            index.remove(path);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isScalar(Object value) {
+        return value == null || value instanceof String || value instanceof Boolean || value instanceof Number;
+    }
+
+    private static Object key(Object value) {
+        return value == null ? NULL_VALUE : ValueMatcher.normalize(value);
+    }
+}
@@ -4,12 +4,13 @@ import io.github.wistefan.dcql.model.ClaimsQuery;
 import io.github.wistefan.dcql.model.credential.*;
 import lombok.extern.slf4j.Slf4j;
 
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Evaluator for ClaimsQueries{@see https://openid.net/specs/openid-4-verifiable-presentations-1_0.html#name-claims-query}
+ * <p>
+ * Claims that cannot be found are reported through return values instead of exceptions. The traversal works on
+ * pooled scratch buffers, thus rejecting a credential does not allocate.
  */
 @Slf4j
 public class ClaimsEvaluator {
@@ -17,27 +18,22 @@ public class ClaimsEvaluator {
     // key for selective disclosure values inside the VC
     private static final String SD_KEY = "_sd";
 
+    // scratch buffers for the path traversal, reused by all evaluations on the same platform thread and pooled for
+    // virtual threads
+    private static final ScratchPool<Scratch> SCRATCH = new ScratchPool<>(Scratch::new);
+
     /**
      * Evaluate claims query for MDoc-Credentials.
      */
     public static Optional<MDocCredential> evaluateClaimsForMDocCredential(ClaimsQuery claimsQuery, MDocCredential credential) {
-        List<SelectedClaim> selectedClaims = new ArrayList<>();
-        try {
-            selectedClaims = selectClaimsByPath(credential.getPayload(), claimsQuery.getPath());
-        } catch (IllegalArgumentException iae) {
-            log.debug("Did not find the requested claims.", iae);
-            return Optional.empty();
-        }
-
-        if (claimsQuery.getValues() == null || claimsQuery.getValues().isEmpty()) {
-            return Optional.of(credential);
-        }
+        return evaluateClaimsForMDocCredential(DcqlCompiler.compile(claimsQuery), credential);
+    }
 
-        // checks if a value exists in the selected claims, that is not in the list of allowedValues.
-        if (selectedClaims.stream().allMatch(sC -> claimsQuery.getValues().contains(sC.value()))) {
-            return Optional.of(credential);
-        }
-        return Optional.empty();
+    /**
+     * Evaluate compiled claims query for MDoc-Credentials.
+     */
+    public static Optional<MDocCredential> evaluateClaimsForMDocCredential(CompiledClaimsQuery claimsQuery, MDocCredential credential) {
+        return matches(claimsQuery, credential.getPayload()) ? Optional.of(credential) : Optional.empty();
     }
 
     /**
@@ -45,193 +41,313 @@ public class ClaimsEvaluator {
      * disclosures in the resulting credential.
      */
     public static Optional<SdJwtCredential> evaluateClaimsForSdJwtCredential(ClaimsQuery claimsQuery, SdJwtCredential credential) {
-        List<SelectedClaim> selectedClaims = new ArrayList<>();
-        try {
-            selectedClaims = selectClaimsByPathDisclosures(credential.getJwtCredential().getPayload(), claimsQuery.getPath(), credential.getDisclosures());
-        } catch (IllegalArgumentException iae) {
-            log.debug("Did not find the requested claims.", iae);
+        return evaluateClaimsForSdJwtCredential(DcqlCompiler.compile(claimsQuery), credential);
+    }
+
+    /**
+     * Evaluate compiled claims query for SD-JWT-Credentials. The evaluator will check the disclosure and only include the
+     * requested disclosures in the resulting credential.
+     */
+    public static Optional<SdJwtCredential> evaluateClaimsForSdJwtCredential(CompiledClaimsQuery claimsQuery, SdJwtCredential credential) {
+        BitSet selectedDisclosures = new BitSet();
+        if (!selectDisclosures(claimsQuery, credential, selectedDisclosures)) {
             return Optional.empty();
         }
+        return Optional.of(credential.withDisclosures(selectedDisclosures));
+    }
 
-        if (claimsQuery.getValues() == null || claimsQuery.getValues().isEmpty()) {
-            return Optional.of(cleanUpDisclosures(selectedClaims, credential));
-        }
+    /**
+     * Evaluate the claims query for JWT Credentials
+     */
+    public static Optional<JwtCredential> evaluateClaimsForJwtCredential(ClaimsQuery claimsQuery, JwtCredential credential) {
+        return evaluateClaimsForJwtCredential(DcqlCompiler.compile(claimsQuery), credential);
+    }
 
-        // checks if a value exists in the selected claims, that is not in the list of allowedValues.
-        if (selectedClaims.stream().allMatch(sC -> claimsQuery.getValues().contains(sC.value()))) {
-            return Optional.of(cleanUpDisclosures(selectedClaims, credential));
-        }
-        return Optional.empty();
+    /**
+     * Evaluate the compiled claims query for JWT Credentials
+     */
+    public static Optional<JwtCredential> evaluateClaimsForJwtCredential(CompiledClaimsQuery claimsQuery, JwtCredential credential) {
+        return matches(claimsQuery, credential.getPayload()) ? Optional.of(credential) : Optional.empty();
     }
 
-    private static SdJwtCredential cleanUpDisclosures(List<SelectedClaim> selectedClaims, SdJwtCredential credential) {
-        Set<String> hashsToInclude = selectedClaims.stream().map(SelectedClaim::hash).collect(Collectors.toSet());
-        List<Disclosure> cleanedDisclosures = credential.getDisclosures()
-                .stream()
-                .filter(disclosure -> hashsToInclude.contains(disclosure.getSdHash()))
-                .toList();
-        return new SdJwtCredential(credential.getRaw(), credential.getJwtCredential(), cleanedDisclosures);
+    /**
+     * Evaluate the claims query for LDP Credentials
+     */
+    public static Optional<LdpCredential> evaluateClaimsForLdpCredential(ClaimsQuery claimsQuery, LdpCredential credential) {
+        return evaluateClaimsForLdpCredential(DcqlCompiler.compile(claimsQuery), credential);
     }
 
     /**
-     * Evaluate the claims query for JWT Credentials
+     * Evaluate the compiled claims query for LDP Credentials
      */
-    public static Optional<JwtCredential> evaluateClaimsForJwtCredential(ClaimsQuery claimsQuery, JwtCredential credential) {
-        List<SelectedClaim> selectedClaims = new ArrayList<>();
+    public static Optional<LdpCredential> evaluateClaimsForLdpCredential(CompiledClaimsQuery claimsQuery, LdpCredential credential) {
+        return matches(claimsQuery, credential.getTheCredential()) ? Optional.of(credential) : Optional.empty();
+    }
+
+    /**
+     * Check if the claims query is fulfilled by the given credential contents. Does not allocate if the claims are not
+     * found.
+     */
+    public static boolean matches(CompiledClaimsQuery claimsQuery, Map<String, Object> credential) {
+        Scratch scratch = SCRATCH.acquire();
         try {
-            selectedClaims = selectClaimsByPath(credential.getPayload(), claimsQuery.getPath());
-        } catch (IllegalArgumentException iae) {
-            log.debug("Did not find the requested claims.", iae);
-            return Optional.empty();
+            Selection selection = processPath(scratch, credential, claimsQuery.getPath(), null);
+            return selection != null && valuesMatch(claimsQuery, selection);
+        } finally {
+            SCRATCH.release(scratch);
         }
-        if (claimsQuery.getValues() == null || claimsQuery.getValues().isEmpty()) {
-            return Optional.of(credential);
+    }
+
+    /**
+     * Check if the claims query is fulfilled by the given SD-JWT credential. If so, the positions of the disclosures
+     * needed to reveal the selected claims are set in the given mask, to be combined with the selections of other
+     * claims. Does not allocate if the claims are not found.
+     */
+    public static boolean selectDisclosures(CompiledClaimsQuery claimsQuery, SdJwtCredential credential, BitSet selectedDisclosures) {
+        // without disclosures, nothing can be revealed
+        SdJwtCredential revealingCredential = credential.getDisclosures() == null ? null : credential;
+        Scratch scratch = SCRATCH.acquire();
+        try {
+            Selection selection = processPath(scratch, credential.getJwtCredential().getPayload(), claimsQuery.getPath(), revealingCredential);
+            if (selection == null || !valuesMatch(claimsQuery, selection)) {
+                return false;
+            }
+            selectDisclosures(selection, credential, selectedDisclosures);
+            return true;
+        } finally {
+            SCRATCH.release(scratch);
         }
+    }
 
-        // checks if a value exists in the selected claims, that is not in the list of allowedValues.
-        if (selectedClaims.stream().allMatch(sC -> claimsQuery.getValues().contains(sC.value()))) {
-            return Optional.of(credential);
+    /**
+     * Check if all claims queries of the trie are fulfilled by the given credential contents. The credential is
+     * traversed once for all claims and the traversal stops at the first claim that is not fulfilled.
+     */
+    public static boolean matchesAll(ClaimPathTrie claimPathTrie, Map<String, Object> credential) {
+        if (claimPathTrie.isEmpty()) {
+            return true;
+        }
+        if (credential == null) {
+            return false;
+        }
+        Scratch scratch = SCRATCH.acquire();
+        try {
+            Selection root = scratch.level(0);
+            root.clear();
+            root.add(credential);
+            return walk(scratch, claimPathTrie.getRoot(), 0, null, null, true);
+        } finally {
+            SCRATCH.release(scratch);
         }
-        return Optional.empty();
     }
 
     /**
-     * Evaluate the claims query for LDP Credentials
+     * Evaluate all claims queries of the trie on the given SD-JWT credential, in a single traversal. For every fulfilled
+     * claim, the positions of the disclosures needed to reveal it are set in the given mask. Returns true if all claims
+     * are fulfilled.
      */
-    public static Optional<LdpCredential> evaluateClaimsForLdpCredential(ClaimsQuery claimsQuery, LdpCredential credential) {
-        List<SelectedClaim> selectedClaims = new ArrayList<>();
+    public static boolean selectDisclosures(ClaimPathTrie claimPathTrie, SdJwtCredential credential, BitSet selectedDisclosures) {
+        if (claimPathTrie.isEmpty()) {
+            return true;
+        }
+        Map<String, Object> payload = credential.getJwtCredential().getPayload();
+        if (payload == null) {
+            return false;
+        }
+        // without disclosures, nothing can be revealed
+        SdJwtCredential revealingCredential = credential.getDisclosures() == null ? null : credential;
+        Scratch scratch = SCRATCH.acquire();
         try {
-            selectedClaims = selectClaimsByPath(credential.getTheCredential(), claimsQuery.getPath());
-        } catch (IllegalArgumentException iae) {
-            log.debug("Did not find the requested claims.", iae);
-            return Optional.empty();
+            Selection root = scratch.level(0);
+            root.clear();
+            root.add(payload);
+            return walk(scratch, claimPathTrie.getRoot(), 0, revealingCredential, selectedDisclosures, false);
+        } finally {
+            SCRATCH.release(scratch);
+        }
+    }
+
+    /**
+     * Evaluates the claims ending at the node and continues with its children. The selection of the node is at the
+     * given depth of the scratch buffers. If a step cannot be applied, all claims below it are not fulfilled.
+     */
+    private static boolean walk(Scratch scratch, ClaimPathTrie.Node node, int depth, SdJwtCredential sdJwtCredential,
+                                BitSet selectedDisclosures, boolean stopOnFailure) {
+        Selection current = scratch.level(depth);
+        boolean allMatched = true;
+
+        for (CompiledClaimsQuery claimsQuery : node.terminals) {
+            if (!valuesMatch(claimsQuery, current)) {
+                if (stopOnFailure) {
+                    return false;
+                }
+                allMatched = false;
+            } else if (selectedDisclosures != null) {
+                selectDisclosures(current, sdJwtCredential, selectedDisclosures);
+            }
         }
-        if (claimsQuery.getValues() == null || claimsQuery.getValues().isEmpty()) {
-            return Optional.of(credential);
+        if (node.children.length == 0) {
+            return allMatched;
         }
 
-        // checks if a value exists in the selected claims, that is not in the list of allowedValues.
-        if (selectedClaims.stream().allMatch(sC -> claimsQuery.getValues().contains(sC.value()))) {
-            return Optional.of(credential);
+        // reveal the disclosures once for all children. The terminals above already saw the original values.
+        if (sdJwtCredential != null) {
+            for (int j = 0; j < current.size; j++) {
+                current.values[j] = reveal(current.values[j], sdJwtCredential);
+            }
+        }
+
+        for (ClaimPathTrie.Node child : node.children) {
+            Selection nextSelection = scratch.level(depth + 1);
+            nextSelection.clear();
+            boolean selected = true;
+            for (int j = 0; j < current.size && selected; j++) {
+                selected = child.step.select(current.values[j], current.hashes[j], nextSelection);
+            }
+            if (!selected || nextSelection.size == 0 || !walk(scratch, child, depth + 1, sdJwtCredential, selectedDisclosures, stopOnFailure)) {
+                if (stopOnFailure) {
+                    return false;
+                }
+                allMatched = false;
+            }
         }
-        return Optional.empty();
+        return allMatched;
     }
 
+    private static void selectDisclosures(Selection selection, SdJwtCredential credential, BitSet selectedDisclosures) {
+        if (credential == null) {
+            return;
+        }
+        for (int i = 0; i < selection.size; i++) {
+            if (selection.hashes[i] != null) {
+                credential.selectDisclosure(selection.hashes[i], selectedDisclosures);
+            }
+        }
+    }
 
-    private static List<SelectedClaim> selectClaimsByPath(Map<String, Object> credential, List<Object> claimPath) {
-        return processPath(credential, claimPath, null);
+    /**
+     * If the candidate is a map containing _sd, returns the view revealing its entries on top of the original map(null
+     * if invalid). Arrays are replaced by the view of their disclosed elements, everything else is returned unchanged.
+     */
+    private static Object reveal(Object candidate, SdJwtCredential sdJwtCredential) {
+        if (candidate instanceof Map<?, ?> mapCandidate && mapCandidate.containsKey(SD_KEY)) {
+            return sdJwtCredential.reveal(mapCandidate);
+        }
+        if (candidate instanceof List<?> listCandidate) {
+            return sdJwtCredential.reveal(listCandidate);
+        }
+        return candidate;
     }
 
-    private static List<SelectedClaim> selectClaimsByPathDisclosures(Map<String, Object> credential, List<Object> claimPath,
-                                                                     List<Disclosure> disclosures) {
-        return processPath(credential, claimPath, disclosures);
+    // checks that no value exists in the selected claims, that is not in the list of allowedValues.
+    private static boolean valuesMatch(CompiledClaimsQuery claimsQuery, Selection selection) {
+        ValueMatcher valueMatcher = claimsQuery.getValueMatcher();
+        if (valueMatcher.matchesAny()) {
+            return true;
+        }
+        for (int i = 0; i < selection.size; i++) {
+            if (!valueMatcher.matches(selection.values[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private static List<SelectedClaim> processPath(
+    /**
+     * Selects the claims at the given path. Returns null if nothing could be selected, otherwise a selection that is
+     * only valid until the scratch is used for the next traversal.
+     */
+    private static Selection processPath(
+            Scratch scratch,
             Map<String, Object> credential,
-            List<Object> claimPath,
-            List<Disclosure> disclosures) {
-        if (credential == null || claimPath == null || claimPath.isEmpty()) {
-            throw new IllegalArgumentException("Credential and claimPath must not be null or empty");
+            ClaimPath claimPath,
+            SdJwtCredential sdJwtCredential) {
+        if (credential == null) {
+            return null;
         }
 
         // Start with root
-        List<SelectedClaim> current = new ArrayList<>();
-        current.add(new SelectedClaim(credential, null));
-
-        for (Object component : claimPath) {
-            List<SelectedClaim> nextSelection = new ArrayList<>();
-
-            for (SelectedClaim candidateWrapper : current) {
-                Object candidate = candidateWrapper.value;
-
-                // If map contains _sd, reveal it and MERGE revealed entries with the original map
-                if (disclosures != null && candidate instanceof Map<?, ?> mapCandidate && mapCandidate.containsKey(SD_KEY)) {
-                    Object sdObj = mapCandidate.get(SD_KEY);
-                    Map<String, SelectedClaim> revealed = null;
-                    revealed = getStringSelectedClaimMap(disclosures, sdObj);
-
-                    // Merge: start with revealed, then copy original entries (except "_sd"),
-                    // so explicit values in the original map overwrite revealed ones if keys collide.
-                    Map<String, Object> merged = new LinkedHashMap<>();
-                    merged.putAll(revealed);
-                    for (Map.Entry<?, ?> e : mapCandidate.entrySet()) {
-                        String k = String.valueOf(e.getKey());
-                        if (SD_KEY.equals(k)) continue;
-                        merged.put(k, e.getValue());
-                    }
-                    candidate = merged;
+        Selection current = scratch.first;
+        Selection nextSelection = scratch.second;
+        current.clear();
+        current.add(credential, null);
+
+        for (int i = 0; i < claimPath.length(); i++) {
+            ClaimPath.Step step = claimPath.step(i);
+            nextSelection.clear();
+
+            for (int j = 0; j < current.size; j++) {
+                Object candidate = current.values[j];
+
+                if (sdJwtCredential != null) {
+                    candidate = reveal(candidate, sdJwtCredential);
                 }
 
-                // Process path component
-                if (component instanceof String key) {
-                    if (!(candidate instanceof Map<?, ?> map)) {
-                        throw new IllegalArgumentException("Expected object for key lookup but found: " + candidate);
-                    }
-                    if (map.containsKey(key)) {
-                        Object val = map.get(key);
-                        if (val instanceof SelectedClaim sc) {
-                            nextSelection.add(sc);
-                        } else {
-                            nextSelection.add(new SelectedClaim(val, null));
-                        }
-                    }
-                } else if (component == null) {
-                    if (!(candidate instanceof List<?> list)) {
-                        throw new IllegalArgumentException("Expected array for null selector but found: " + candidate);
-                    }
-                    for (Object elem : list) {
-                        if (elem instanceof SelectedClaim sc) {
-                            nextSelection.add(sc);
-                        } else {
-                            nextSelection.add(new SelectedClaim(elem, null));
-                        }
-                    }
-                } else if (component instanceof Integer index && index >= 0) {
-                    if (!(candidate instanceof List<?> list)) {
-                        throw new IllegalArgumentException("Expected array for index selector but found: " + candidate);
-                    }
-                    if (index < list.size()) {
-                        Object val = list.get(index);
-                        if (val instanceof SelectedClaim sc) {
-                            nextSelection.add(sc);
-                        } else {
-                            nextSelection.add(new SelectedClaim(val, null));
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException("Invalid claim path component: " + component);
+                if (!step.select(candidate, current.hashes[j], nextSelection)) {
+                    log.debug("Unexpected element for path component {}.", claimPath.getComponents().get(i));
+                    return null;
                 }
             }
-            if (nextSelection.isEmpty()) {
-                throw new IllegalArgumentException("No elements selected at path component: " + component);
+            if (nextSelection.size == 0) {
+                log.debug("No elements selected at path component {}.", claimPath.getComponents().get(i));
+                return null;
             }
+            // swap the buffers, to reuse them for the next component
+            Selection previous = current;
             current = nextSelection;
+            nextSelection = previous;
         }
         return current;
     }
 
+    /**
+     * Growable buffer of selected values, together with the hashes of the disclosures revealing them.
+     */
+    static final class Selection {
+
+        private static final int INITIAL_CAPACITY = 16;
 
-    private static Map<String, SelectedClaim> getStringSelectedClaimMap(List<Disclosure> disclosures, Object sdObj) {
-        if (!(sdObj instanceof List<?> sdList)) {
-            throw new IllegalArgumentException("_sd field must be a list");
-        }
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private String[] hashes = new String[INITIAL_CAPACITY];
+        private int size;
 
-        Map<String, SelectedClaim> revealed = new LinkedHashMap<>();
-        for (Object hashObj : sdList) {
-            if (!(hashObj instanceof String hash)) continue;
-            for (Disclosure disclosure : disclosures) {
-                String sdHash = disclosure.getSdHash();
-                if (hash.equals(sdHash)) {
-                    revealed.put(disclosure.getClaim(), new SelectedClaim(disclosure.getValue(), sdHash));
-                }
+        void add(Object value, String hash) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
             }
+            values[size] = value;
+            hashes[size] = hash;
+            size++;
+        }
+
+        void add(Object value) {
+            add(value, null);
         }
-        return revealed;
-    }
 
-    // helper record for selective disclosure claims to be used for the evaluation of SD-Credentials.
-    private record SelectedClaim(Object value, String hash) {
+        void clear() {
+            // release the references, to not keep credentials alive through the thread
+            Arrays.fill(values, 0, size, null);
+            Arrays.fill(hashes, 0, size, null);
+            size = 0;
+        }
     }
 
+    private static final class Scratch {
+        private final Selection first = new Selection();
+        private final Selection second = new Selection();
+        // one selection per depth of a trie traversal, the siblings of a node reuse the same buffer
+        private Selection[] levels = new Selection[0];
+
+        private Selection level(int depth) {
+            if (depth >= levels.length) {
+                int oldLength = levels.length;
+                levels = Arrays.copyOf(levels, Math.max(depth + 1, oldLength * 2));
+                for (int i = oldLength; i < levels.length; i++) {
+                    levels[i] = new Selection();
+                }
+            }
+            return levels[depth];
+        }
+    }
 }
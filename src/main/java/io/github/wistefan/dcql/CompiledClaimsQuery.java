@@ -0,0 +1,39 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Immutable form of a {@link ClaimsQuery}, with its path compiled into a {@link ClaimPath}.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledClaimsQuery {
+
+    /**
+     * Copy of the original query, with the path already translated to the format-specific location.
+     */
+    private final ClaimsQuery claimsQuery;
+
+    private final String id;
+
+    private final ClaimPath path;
+
+    /**
+     * The allowed values of the claim, empty if every value is accepted.
+     */
+    private final List<Object> values;
+
+    /**
+     * Matcher for the values, pre-normalized at compile time.
+     */
+    private final ValueMatcher valueMatcher;
+
+    public boolean containsValues() {
+        return !values.isEmpty();
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Immutable, pre-validated form of a {@link CredentialQuery}. All information that does not depend on the credentials
+ * to be evaluated(parsed metadata, resolved claim_sets, the responsible evaluator) is derived once by the
+ * {@link DcqlCompiler}.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledCredentialQuery {
+
+    // copy of the original query, taken at compile time
+    @Getter(AccessLevel.NONE)
+    private final CredentialQuery credentialQuery;
+
+    private final String id;
+    private final CredentialFormat format;
+    private final boolean multiple;
+
+    /**
+     * The evaluator responsible for the format of the query.
+     */
+    private final CredentialEvaluator credentialEvaluator;
+
+    /**
+     * The claims queries, already translated to the format-specific paths. Empty if the query does not contain claims.
+     */
+    private final List<CompiledClaimsQuery> claims;
+
+    /**
+     * The claim_sets, resolved to their claims queries. Empty if the query does not contain claim_sets.
+     */
+    private final List<List<CompiledClaimsQuery>> claimSets;
+
+    /**
+     * The claims, merged into a trie to evaluate all of them in a single traversal of a credential.
+     */
+    private final ClaimPathTrie claimsTrie;
+
+    /**
+     * One trie per claim_set, in the order of the claim_sets.
+     */
+    private final List<ClaimPathTrie> claimSetTries;
+
+    /**
+     * The trusted_authorities of the query. Empty if none are requested.
+     */
+    private final List<CompiledTrustedAuthorityQuery> trustedAuthorities;
+
+    // the parsed metadata, depending on the format of the query. Null if no meta was requested.
+    private final W3CMetaData w3CMetaData;
+    private final JwtMetaData jwtMetaData;
+    private final MDocMetaData mDocMetaData;
+
+    /**
+     * Relative estimate of the cost to evaluate the query on a credential, cheap and selective queries have lower
+     * values. Used to order the evaluation, not comparable between different compilers.
+     */
+    private final int estimatedCost;
+
+    /**
+     * Copy of the original query. Only to be used by evaluators that do not support compiled queries. Every call returns
+     * a new copy, thus changes to it do not affect the compiled query.
+     */
+    public CredentialQuery getCredentialQuery() {
+        return DcqlCompiler.copy(credentialQuery);
+    }
+
+    public boolean containsClaims() {
+        return !claims.isEmpty();
+    }
+
+    public boolean containsClaimSets() {
+        return !claimSets.isEmpty();
+    }
+
+    public boolean containsTrustAuthorities() {
+        return !trustedAuthorities.isEmpty();
+    }
+
+    public boolean containsMeta() {
+        return w3CMetaData != null || jwtMetaData != null || mDocMetaData != null;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.CredentialSetQuery;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Immutable form of a {@link CredentialSetQuery}, with the options resolved to their compiled credential queries.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledCredentialSetQuery {
+
+    private final List<List<CompiledCredentialQuery>> options;
+    private final boolean required;
+    // purpose of the set, null if not provided
+    private final Object purpose;
+}
@@ -0,0 +1,42 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.DcqlQuery;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable evaluation plan of a {@link DcqlQuery}, created by the {@link DcqlCompiler}. A compiled query can be
+ * evaluated any number of times and concurrently.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledDcqlQuery {
+
+    /**
+     * The credential queries, in the order of the original query.
+     */
+    private final List<CompiledCredentialQuery> credentialQueries;
+
+    /**
+     * The credential queries, ordered by their estimated cost. Queries with the same cost keep their original order.
+     */
+    private final List<CompiledCredentialQuery> credentialQueriesByCost;
+
+    /**
+     * The credential queries, keyed by their id. Empty if the query does not use credential_sets.
+     */
+    private final Map<String, CompiledCredentialQuery> credentialQueriesById;
+
+    /**
+     * The credential sets, in the order of the original query. Empty if the query does not contain credential_sets.
+     */
+    private final List<CompiledCredentialSetQuery> credentialSets;
+
+    public boolean containsCredentialSets() {
+        return !credentialSets.isEmpty();
+    }
+}
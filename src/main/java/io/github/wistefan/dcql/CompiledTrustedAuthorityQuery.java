@@ -0,0 +1,34 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.TrustedAuthorityQuery;
+import io.github.wistefan.dcql.model.TrustedAuthorityType;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable form of a {@link TrustedAuthorityQuery}. Values of the type {@link TrustedAuthorityType#AKI} are decoded
+ * once, so that checking a certificate is a hash lookup.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledTrustedAuthorityQuery {
+
+    /**
+     * Copy of the original query.
+     */
+    private final TrustedAuthorityQuery trustedAuthorityQuery;
+
+    private final TrustedAuthorityType type;
+
+    private final List<String> values;
+
+    /**
+     * The decoded values, if the type is {@link TrustedAuthorityType#AKI}. Values that are not the padded base64url
+     * encoding of an identifier are left out, since they cannot match any certificate. Empty for all other types.
+     */
+    private final Set<KeyIdentifier> authorityKeyIdentifiers;
+}
@@ -27,4 +27,29 @@ public interface CredentialEvaluator<T extends CredentialBase> {
      * Evaluate the query on the list of credentials.
      */
     List<Credential> evaluate(CredentialQuery credentialQuery, List<T> credentialsList);
+
+    /**
+     * Evaluate the compiled query on the list of credentials. Evaluators should override it to make use of the
+     * pre-computed information, the default falls back to the original query.
+     */
+    default List<Credential> evaluate(CompiledCredentialQuery credentialQuery, List<T> credentialsList) {
+        return evaluate(credentialQuery.getCredentialQuery(), credentialsList);
+    }
+
+    /**
+     * Evaluate the compiled query on the credentials of the wallet. Evaluators should override it to make use of the
+     * wallet indexes, the default evaluates all credentials of the supported format.
+     */
+    default List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        return evaluate(credentialQuery, translate(wallet.getCredentials(supportedFormat())));
+    }
+
+    /**
+     * Returns true if the evaluator decides on every credential of the list independently, thus evaluating parts of
+     * the list and concatenating the results is equal to evaluating the whole list. Allows the {@link DCQLEvaluator}
+     * to split large lists across its executor.
+     */
+    default boolean evaluatesIndependently(CompiledCredentialQuery credentialQuery) {
+        return false;
+    }
 }
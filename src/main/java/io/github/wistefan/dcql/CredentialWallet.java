@@ -0,0 +1,372 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.*;
+import io.github.wistefan.dcql.model.credential.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+/**
+ * Collection of {@link Credential}s to be queried. Credentials are partitioned by their {@link CredentialFormat} when
+ * they are added, and indexed by their vct(SD-JWT), docType(mdoc) and type(W3C formats). Metadata filters of a query
+ * thus become index lookups, instead of scanning all credentials.
+ * <p>
+ * Additional, optional indexes can be enabled through {@link WalletIndex}.
+ * <p>
+ * Concurrent evaluations on the same wallet are safe, modifications must not happen concurrently to them.
+ */
+@Slf4j
+public class CredentialWallet {
+
+    // removed positions are only reclaimed once there are more of them than live credentials and at least this many
+    private static final int MIN_COMPACTION_SIZE = 64;
+
+    // all credentials, by their position. Null if removed
+    private final List<Credential> credentials = new ArrayList<>();
+    // positions of the credentials, to support removal
+    private final Map<Credential, Integer> positions = new IdentityHashMap<>();
+    private final EnumMap<CredentialFormat, BitSet> formatIndex = new EnumMap<>(CredentialFormat.class);
+    private final Map<String, BitSet> vctIndex = new HashMap<>();
+    private final Map<String, BitSet> docTypeIndex = new HashMap<>();
+    private final Map<String, BitSet> typeIndex = new HashMap<>();
+    // null if not enabled
+    private final ClaimValueIndex claimValueIndex;
+    // null if not enabled
+    private final Map<KeyIdentifier, BitSet> authorityKeyIndex;
+    private int removed;
+
+    public CredentialWallet() {
+        this(List.of());
+    }
+
+    public CredentialWallet(Collection<Credential> credentials) {
+        this(credentials, Set.of());
+    }
+
+    /**
+     * Create a wallet with the given credentials, maintaining the additional indexes.
+     */
+    public CredentialWallet(Collection<Credential> credentials, Set<WalletIndex> walletIndexes) {
+        this.claimValueIndex = walletIndexes.contains(WalletIndex.CLAIM_VALUES) ? new ClaimValueIndex() : null;
+        this.authorityKeyIndex = walletIndexes.contains(WalletIndex.AUTHORITY_KEY_IDENTIFIERS) ? new HashMap<>() : null;
+        addAll(credentials);
+    }
+
+    /**
+     * Add the credential to the wallet. Fails with an {@link IllegalArgumentException} if the credential does not
+     * match its format or is already contained.
+     */
+    public void add(Credential credential) {
+        validate(credential);
+        if (positions.containsKey(credential)) {
+            throw new IllegalArgumentException("The credential is already contained in the wallet.");
+        }
+        int position = credentials.size();
+        credentials.add(credential);
+        positions.put(credential, position);
+        updateIndexes(position, credential, true);
+    }
+
+    /**
+     * Add all credentials to the wallet. The sd hashes of all SD-JWT disclosures are calculated up-front, in parallel
+     * for larger imports, instead of on the first query.
+     */
+    public void addAll(Collection<Credential> credentialsToAdd) {
+        List<SdJwtCredential> sdJwtCredentials = new ArrayList<>();
+        for (Credential credential : credentialsToAdd) {
+            if (credential != null && credential.getRawCredential() instanceof SdJwtCredential sdJwtCredential) {
+                sdJwtCredentials.add(sdJwtCredential);
+            }
+        }
+        DisclosureHasher.hashAll(sdJwtCredentials);
+        credentialsToAdd.forEach(this::add);
+    }
+
+    /**
+     * Remove the given credential instance from the wallet. Returns false if it is not contained. The credential is
+     * removed from all indexes, its position is only reused once the wallet is compacted.
+     */
+    public boolean remove(Credential credential) {
+        Integer position = positions.remove(credential);
+        if (position == null) {
+            return false;
+        }
+        credentials.set(position, null);
+        updateIndexes(position, credential, false);
+        removed++;
+        if (removed >= MIN_COMPACTION_SIZE && removed > positions.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    public boolean isEmpty() {
+        return positions.isEmpty();
+    }
+
+    /**
+     * Returns all credentials, in the order they were added.
+     */
+    public List<Credential> getCredentials() {
+        List<Credential> liveCredentials = new ArrayList<>(positions.size());
+        for (Credential credential : credentials) {
+            if (credential != null) {
+                liveCredentials.add(credential);
+            }
+        }
+        return liveCredentials;
+    }
+
+    /**
+     * Returns all credentials of the given format, in the order they were added.
+     */
+    public List<Credential> getCredentials(CredentialFormat credentialFormat) {
+        BitSet formatPositions = formatIndex.get(credentialFormat);
+        return formatPositions == null ? List.of() : materialize(formatPositions);
+    }
+
+    /**
+     * Returns the credentials of the queries format, that fulfill its metadata. If the claim values are indexed,
+     * claims queries that can be answered by the index are applied, too. If the authority key identifiers are indexed,
+     * trusted authorities of type aki are applied. All other claims and trusted authorities are not evaluated.
+     */
+    public List<Credential> getCandidates(CompiledCredentialQuery credentialQuery) {
+        return materialize(candidates(credentialQuery));
+    }
+
+    /**
+     * Positions of the credentials that have the format of the query, fulfill its metadata and the claims and trusted
+     * authorities answered by the optional indexes.
+     */
+    BitSet candidates(CompiledCredentialQuery credentialQuery) {
+        BitSet formatPositions = formatIndex.get(credentialQuery.getFormat());
+        if (formatPositions == null) {
+            return new BitSet();
+        }
+        BitSet candidates;
+        if (!credentialQuery.containsMeta()) {
+            candidates = (BitSet) formatPositions.clone();
+        } else {
+            candidates = switch (credentialQuery.getFormat()) {
+                case MSO_MDOC -> lookup(docTypeIndex, credentialQuery.getMDocMetaData().getDocType());
+                case VC_SD_JWT, DC_SD_JWT -> union(vctIndex, credentialQuery.getJwtMetaData().getVctValues());
+                case JWT_VC_JSON, LDP_VC -> typeCandidates(credentialQuery.getW3CMetaData(), formatPositions);
+            };
+            candidates.and(formatPositions);
+        }
+        if (resolvesAuthorityKeyIdentifiers(credentialQuery.getFormat())) {
+            for (CompiledTrustedAuthorityQuery trustedAuthorityQuery : credentialQuery.getTrustedAuthorities()) {
+                if (trustedAuthorityQuery.getType() == TrustedAuthorityType.AKI) {
+                    candidates.and(union(authorityKeyIndex, trustedAuthorityQuery.getAuthorityKeyIdentifiers()));
+                }
+            }
+        }
+        if (claimValueIndex != null && isClaimIndexed(credentialQuery.getFormat()) && !credentialQuery.containsClaimSets()) {
+            for (CompiledClaimsQuery claimsQuery : credentialQuery.getClaims()) {
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                BitSet matching = claimValueIndex.lookup(claimsQuery);
+                if (matching != null) {
+                    candidates.and(matching);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns true if all claims of the query are already applied by {@link #candidates(CompiledCredentialQuery)}, thus
+     * the candidates do not need to be traversed for them.
+     */
+    boolean resolvesClaims(CompiledCredentialQuery credentialQuery) {
+        return claimValueIndex != null
+                && isClaimIndexed(credentialQuery.getFormat())
+                && !credentialQuery.containsClaimSets()
+                && credentialQuery.getClaims().stream().allMatch(ClaimValueIndex::resolves);
+    }
+
+    /**
+     * Returns true if trusted authorities of type aki are already applied by {@link #candidates(CompiledCredentialQuery)}
+     * for the format.
+     */
+    boolean resolvesAuthorityKeyIdentifiers(CredentialFormat credentialFormat) {
+        return authorityKeyIndex != null && credentialFormat != CredentialFormat.LDP_VC;
+    }
+
+    /**
+     * Returns the typed credential at the position. Only valid for positions taken from the wallet's indexes.
+     */
+    CredentialBase getRawCredential(int position) {
+        return credentials.get(position).getRawCredential();
+    }
+
+    /**
+     * Returns the credentials at the given positions, in position order.
+     */
+    List<Credential> materialize(BitSet candidatePositions) {
+        List<Credential> candidates = new ArrayList<>(candidatePositions.cardinality());
+        for (int i = candidatePositions.nextSetBit(0); i >= 0; i = candidatePositions.nextSetBit(i + 1)) {
+            candidates.add(credentials.get(i));
+        }
+        return candidates;
+    }
+
+    // a credential fulfills the meta, if it contains all types of at least one of the type_values
+    private BitSet typeCandidates(W3CMetaData w3CMetaData, BitSet formatPositions) {
+        BitSet candidates = new BitSet();
+        for (List<String> types : w3CMetaData.getTypeValues()) {
+            BitSet typeSetCandidates = (BitSet) formatPositions.clone();
+            for (String type : types) {
+                BitSet typePositions = typeIndex.get(type);
+                if (typePositions == null) {
+                    typeSetCandidates.clear();
+                    break;
+                }
+                typeSetCandidates.and(typePositions);
+            }
+            candidates.or(typeSetCandidates);
+        }
+        return candidates;
+    }
+
+    private static BitSet lookup(Map<String, BitSet> index, String key) {
+        BitSet positions = index.get(key);
+        return positions == null ? new BitSet() : (BitSet) positions.clone();
+    }
+
+    private static <K> BitSet union(Map<K, BitSet> index, Collection<K> keys) {
+        BitSet positions = new BitSet();
+        for (K key : keys) {
+            BitSet keyPositions = index.get(key);
+            if (keyPositions != null) {
+                positions.or(keyPositions);
+            }
+        }
+        return positions;
+    }
+
+    // adds the position to or removes it from all indexes the credential is contained in
+    private void updateIndexes(int position, Credential credential, boolean add) {
+        updateIndex(formatIndex, credential.getCredentialFormat(), position, add);
+        CredentialBase rawCredential = credential.getRawCredential();
+        // credentials without valid metadata are still contained, but never fulfill a metadata query
+        try {
+            switch (credential.getCredentialFormat()) {
+                case MSO_MDOC -> updateIndex(docTypeIndex, ((MDocCredential) rawCredential).getDocType(), position, add);
+                case VC_SD_JWT, DC_SD_JWT ->
+                        updateIndex(vctIndex, ((SdJwtCredential) rawCredential).getVct(), position, add);
+                case JWT_VC_JSON -> ((JwtCredential) rawCredential).getType()
+                        .forEach(type -> updateIndex(typeIndex, type, position, add));
+                case LDP_VC -> ((LdpCredential) rawCredential).getType()
+                        .forEach(type -> updateIndex(typeIndex, type, position, add));
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Credential at position {} does not contain valid metadata.", position, e);
+        }
+        if (resolvesAuthorityKeyIdentifiers(credential.getCredentialFormat())) {
+            authorityKeyIdentifiers(position, credential)
+                    .forEach(keyIdentifier -> updateIndex(authorityKeyIndex, keyIdentifier, position, add));
+        }
+        if (claimValueIndex != null && isClaimIndexed(credential.getCredentialFormat())) {
+            Map<String, Object> claims = switch (credential.getCredentialFormat()) {
+                case MSO_MDOC -> ((MDocCredential) rawCredential).getPayload();
+                case JWT_VC_JSON -> ((JwtCredential) rawCredential).getPayload();
+                case LDP_VC -> ((LdpCredential) rawCredential).getTheCredential();
+                default -> throw new IllegalStateException("Unexpected format " + credential.getCredentialFormat());
+            };
+            if (add) {
+                claimValueIndex.add(position, claims);
+            } else {
+                claimValueIndex.remove(position, claims);
+            }
+        }
+    }
+
+    private static List<KeyIdentifier> authorityKeyIdentifiers(int position, Credential credential) {
+        CredentialBase rawCredential = credential.getRawCredential();
+        List<X509Certificate> x5Chain;
+        // credentials with an invalid chain are still contained, but never fulfill an aki query
+        try {
+            x5Chain = switch (credential.getCredentialFormat()) {
+                case MSO_MDOC -> ((MDocCredential) rawCredential).getHeaders() == null ?
+                        null :
+                        ((MDocCredential) rawCredential).getHeaders().getX5Chain();
+                case VC_SD_JWT, DC_SD_JWT -> ((SdJwtCredential) rawCredential).getJwtCredential().getX5Chain();
+                case JWT_VC_JSON -> ((JwtCredential) rawCredential).getX5Chain();
+                case LDP_VC -> null;
+            };
+        } catch (IllegalArgumentException e) {
+            log.debug("Credential at position {} does not contain a valid x5c chain.", position, e);
+            return List.of();
+        }
+        if (x5Chain == null) {
+            return List.of();
+        }
+        List<KeyIdentifier> keyIdentifiers = new ArrayList<>(x5Chain.size());
+        for (X509Certificate certificate : x5Chain) {
+            TrustedAuthoritiesEvaluator.authorityKeyIdentifier(certificate).ifPresent(keyIdentifiers::add);
+        }
+        return keyIdentifiers;
+    }
+
+    // sd-jwt claims need to be disclosed, thus they cannot be indexed
+    private static boolean isClaimIndexed(CredentialFormat credentialFormat) {
+        return credentialFormat != CredentialFormat.VC_SD_JWT && credentialFormat != CredentialFormat.DC_SD_JWT;
+    }
+
+    private static <K> void updateIndex(Map<K, BitSet> index, K key, int position, boolean add) {
+        if (add) {
+            index.computeIfAbsent(key, k -> new BitSet()).set(position);
+            return;
+        }
+        BitSet keyPositions = index.get(key);
+        if (keyPositions != null) {
+            keyPositions.clear(position);
+            // drop empty entries, to not keep the keys of removed credentials
+            if (keyPositions.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static void validate(Credential credential) {
+        if (credential == null || credential.getCredentialFormat() == null) {
+            throw new IllegalArgumentException("Credentials need to have a format.");
+        }
+        CredentialBase rawCredential = credential.getRawCredential();
+        boolean valid = switch (credential.getCredentialFormat()) {
+            case MSO_MDOC -> rawCredential instanceof MDocCredential;
+            case VC_SD_JWT, DC_SD_JWT -> rawCredential instanceof SdJwtCredential;
+            case JWT_VC_JSON -> rawCredential instanceof JwtCredential;
+            case LDP_VC -> rawCredential instanceof LdpCredential;
+        };
+        if (!valid) {
+            throw new IllegalArgumentException(String.format("The given credential does not contain an %s.", credential.getCredentialFormat().getValue()));
+        }
+    }
+
+    // rebuild all indexes, to reclaim the positions of removed credentials
+    private void compact() {
+        List<Credential> liveCredentials = getCredentials();
+        credentials.clear();
+        positions.clear();
+        formatIndex.clear();
+        vctIndex.clear();
+        docTypeIndex.clear();
+        typeIndex.clear();
+        if (claimValueIndex != null) {
+            claimValueIndex.clear();
+        }
+        if (authorityKeyIndex != null) {
+            authorityKeyIndex.clear();
+        }
+        removed = 0;
+        liveCredentials.forEach(this::add);
+    }
+}
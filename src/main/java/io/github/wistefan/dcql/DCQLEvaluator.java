@@ -2,72 +2,328 @@ package io.github.wistefan.dcql;
 
 import io.github.wistefan.dcql.model.*;
 import io.github.wistefan.dcql.model.credential.*;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Evaluator for DCQL Queries{@see https://openid.net/specs/openid-4-verifiable-presentations-1_0.html#name-digital-credentials-query-l}
  */
-@RequiredArgsConstructor
 @Slf4j
 public class DCQLEvaluator {
 
     // default key for non-credential-set results.
     private static final String DEFAULT_KEY = "credentials";
+    // lists are not split into smaller chunks, to keep the scheduling overhead low
+    private static final int MIN_CHUNK_SIZE = 256;
+    // number of wallets evaluated concurrently by evaluateAcrossWallets, if not specified
+    private static final int DEFAULT_MAX_WALLETS_IN_FLIGHT = 64;
+    // runs the asynchronous evaluations, virtual threads are not pooled and do not need to be shut down
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
 
-    private final List<CredentialEvaluator> credentialEvaluators;
+    private final DcqlCompiler dcqlCompiler;
+    private final EvaluationOptions evaluationOptions;
+
+    @Getter
+    private final EvaluationStatistics statistics = new EvaluationStatistics();
+
+    public DCQLEvaluator(List<CredentialEvaluator> credentialEvaluators) {
+        this(credentialEvaluators, EvaluationOptions.DEFAULT);
+    }
+
+    public DCQLEvaluator(List<CredentialEvaluator> credentialEvaluators, EvaluationOptions evaluationOptions) {
+        this(new EvaluatorRegistry(credentialEvaluators), evaluationOptions);
+    }
+
+    public DCQLEvaluator(EvaluatorRegistry evaluatorRegistry) {
+        this(evaluatorRegistry, EvaluationOptions.DEFAULT);
+    }
+
+    public DCQLEvaluator(EvaluatorRegistry evaluatorRegistry, EvaluationOptions evaluationOptions) {
+        this.dcqlCompiler = new DcqlCompiler(evaluatorRegistry);
+        this.evaluationOptions = evaluationOptions;
+    }
+
+    /**
+     * Compile the query into a reusable plan, to be evaluated via {@link #evaluate(CompiledDcqlQuery, List)}.
+     */
+    public CompiledDcqlQuery compile(DcqlQuery dcqlQuery) {
+        return dcqlCompiler.compile(dcqlQuery);
+    }
 
     public QueryResult evaluateDCQLQuery(DcqlQuery dcqlQuery, List<Credential> credentialsList) {
-        if (containsCredentialSets(dcqlQuery)) {
-            // linked map to contain set order
-            Map<Object, List<Credential>> resultMap = new LinkedHashMap<>();
-            validateIds(dcqlQuery.getCredentials());
-            Map<String, CredentialQuery> credentialQueryMap = new HashMap<>();
-            dcqlQuery.getCredentials()
-                    .forEach(cq -> credentialQueryMap.put(cq.getId(), cq));
-            for (CredentialSetQuery credentialSetQuery : dcqlQuery.getCredentialSets()) {
-                List<Credential> credentialsForSet = evaluateCredentialSetQuery(credentialQueryMap, credentialSetQuery, credentialsList);
-                if (credentialsForSet.isEmpty() && credentialSetQuery.getRequired()) {
-                    log.debug("The query cannot be fulfilled, since a required set is empty.");
-                    return new QueryResult(false, Map.of());
+        return evaluate(compile(dcqlQuery), credentialsList);
+    }
+
+    public QueryResult evaluateDCQLQuery(DcqlQuery dcqlQuery, CredentialWallet wallet) {
+        return evaluate(compile(dcqlQuery), wallet);
+    }
+
+    /**
+     * Evaluate a compiled query on the given credentials.
+     */
+    public QueryResult evaluate(CompiledDcqlQuery compiledQuery, List<Credential> credentialsList) {
+        return evaluate(compiledQuery, cq -> evaluateCredentialQuery(cq, credentialsList), evaluationOptions.getExecutor());
+    }
+
+    /**
+     * Evaluate a compiled query on the credentials of the wallet, using its indexes.
+     */
+    public QueryResult evaluate(CompiledDcqlQuery compiledQuery, CredentialWallet wallet) {
+        return evaluate(compiledQuery, cq -> evaluateCredentialQuery(cq, wallet), evaluationOptions.getExecutor());
+    }
+
+    /**
+     * Evaluate the query on the credentials of the wallet, without blocking the caller. The evaluation runs on a
+     * virtual thread, its credential queries fan out on virtual threads of their own. Invalid queries complete the
+     * future exceptionally.
+     */
+    public CompletableFuture<QueryResult> evaluateAsync(DcqlQuery dcqlQuery, CredentialWallet wallet) {
+        return CompletableFuture.supplyAsync(() -> evaluateStructured(compile(dcqlQuery), wallet), VIRTUAL_THREADS);
+    }
+
+    /**
+     * Evaluate a compiled query on the credentials of the wallet, without blocking the caller.
+     */
+    public CompletableFuture<QueryResult> evaluateAsync(CompiledDcqlQuery compiledQuery, CredentialWallet wallet) {
+        return CompletableFuture.supplyAsync(() -> evaluateStructured(compiledQuery, wallet), VIRTUAL_THREADS);
+    }
+
+    /**
+     * Evaluate the query on the credentials of the wallet, with one virtual thread per credential query. All of them
+     * are bound to the call: when it returns, no work of the evaluation is left running. Evaluations that are not
+     * needed anymore, e.g. once a credential query is not fulfilled, are interrupted instead of being finished. Meant to
+     * be called from a virtual thread, that is cheap to block.
+     */
+    public QueryResult evaluateStructured(DcqlQuery dcqlQuery, CredentialWallet wallet) {
+        return evaluateStructured(compile(dcqlQuery), wallet);
+    }
+
+    /**
+     * Evaluate a compiled query on the credentials of the wallet, with one virtual thread per credential query.
+     */
+    public QueryResult evaluateStructured(CompiledDcqlQuery compiledQuery, CredentialWallet wallet) {
+        // closing the scope waits for all forked evaluations. The ones that are not needed anymore are interrupted
+        // before, so that they stop instead of being finished.
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                return evaluate(compiledQuery, cq -> evaluateCredentialQuery(cq, wallet), scope);
+            } finally {
+                scope.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Evaluate multiple queries, e.g. the requests of several verifiers for the same holder, on the credentials of the
+     * wallet. The wallet is prepared only once, and credential queries that are contained in multiple queries of the
+     * batch(independent of their id) are evaluated only once. Returns one result per query, in the order of the
+     * queries.
+     */
+    public List<QueryResult> evaluateBatch(List<DcqlQuery> dcqlQueries, CredentialWallet wallet) {
+        // evaluations shared by all queries of the batch. Tasks instead of results, so that concurrent evaluations of
+        // the same credential query wait for each other, without holding a lock.
+        Map<CredentialQueryKey, FutureTask<List<Credential>>> sharedEvaluations = new ConcurrentHashMap<>();
+        Function<CompiledCredentialQuery, List<Credential>> credentialQueryEvaluation = cq -> {
+            FutureTask<List<Credential>> evaluation = new FutureTask<>(() -> evaluateCredentialQuery(cq, wallet));
+            FutureTask<List<Credential>> shared = sharedEvaluations.putIfAbsent(CredentialQueryKey.of(cq), evaluation);
+            if (shared != null) {
+                statistics.recordCacheHit();
+                return ParallelTasks.join(shared);
+            }
+            return ParallelTasks.join(evaluation);
+        };
+        List<QueryResult> queryResults = new ArrayList<>(dcqlQueries.size());
+        for (DcqlQuery dcqlQuery : dcqlQueries) {
+            queryResults.add(evaluate(compile(dcqlQuery), credentialQueryEvaluation, evaluationOptions.getExecutor()));
+        }
+        return queryResults;
+    }
+
+    /**
+     * Evaluate the query on each of the wallets, e.g. to re-verify the credentials of many holders. See
+     * {@link #evaluateAcrossWallets(CompiledDcqlQuery, Iterable, BiConsumer, int)}.
+     */
+    public void evaluateAcrossWallets(DcqlQuery dcqlQuery, Iterable<CredentialWallet> wallets, BiConsumer<CredentialWallet, QueryResult> sink) {
+        evaluateAcrossWallets(compile(dcqlQuery), wallets, sink, DEFAULT_MAX_WALLETS_IN_FLIGHT);
+    }
+
+    /**
+     * Evaluate the compiled query on each of the wallets, in parallel on the configured executor(virtual threads if
+     * none is configured). The wallets are pulled from the iterable only when fewer than maxWalletsInFlight are
+     * evaluated, thus they can be loaded lazily with bounded memory. Every result is handed to the sink, which may be
+     * called concurrently and in any order. Returns once all wallets are evaluated. If an evaluation or the sink fails,
+     * no further wallets are started and the first failure is rethrown. If the iterable fails or the thread is
+     * interrupted, the evaluations already started are finished before returning as well, so that the sink is never
+     * called after this method returned.
+     */
+    public void evaluateAcrossWallets(CompiledDcqlQuery compiledQuery, Iterable<CredentialWallet> wallets,
+                                      BiConsumer<CredentialWallet, QueryResult> sink, int maxWalletsInFlight) {
+        if (maxWalletsInFlight < 1) {
+            throw new IllegalArgumentException("At least one wallet has to be evaluated at a time.");
+        }
+        Executor executor = Optional.ofNullable(evaluationOptions.getExecutor()).orElse(VIRTUAL_THREADS);
+        Semaphore inFlight = new Semaphore(maxWalletsInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        boolean completed = false;
+        try {
+            Iterator<CredentialWallet> walletIterator = wallets.iterator();
+            while (true) {
+                // wait for a free slot before pulling the next wallet, to not load more wallets than are evaluated
+                inFlight.acquire();
+                CredentialWallet wallet;
+                boolean pulled = false;
+                try {
+                    if (failure.get() != null || !walletIterator.hasNext()) {
+                        break;
+                    }
+                    wallet = walletIterator.next();
+                    pulled = true;
+                } finally {
+                    // the slot is only handed to the evaluation if a wallet was pulled
+                    if (!pulled) {
+                        inFlight.release();
+                    }
                 }
-                resultMap.put(purposeOrRandom(credentialSetQuery), credentialsForSet);
+                Runnable walletEvaluation = () -> {
+                    try {
+                        sink.accept(wallet, evaluate(compiledQuery, wallet));
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                };
+                try {
+                    executor.execute(walletEvaluation);
+                } catch (RejectedExecutionException e) {
+                    walletEvaluation.run();
+                } catch (RuntimeException | Error e) {
+                    // the evaluation was not started and will not release its slot
+                    inFlight.release();
+                    throw e;
+                }
+            }
+            // wait for the evaluations that are still running
+            inFlight.acquire(maxWalletsInFlight);
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("Interrupted while evaluating the wallets.", e);
+        } finally {
+            // on every other exit, the evaluations still running have to finish as well. Otherwise, they would call the
+            // sink after returning.
+            if (!completed) {
+                inFlight.acquireUninterruptibly(maxWalletsInFlight);
+            }
+        }
+        Throwable firstFailure = failure.get();
+        if (firstFailure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (firstFailure instanceof Error error) {
+            throw error;
+        }
+    }
+
+    private QueryResult evaluate(CompiledDcqlQuery compiledQuery, Function<CompiledCredentialQuery, List<Credential>> credentialQueryEvaluation,
+                                 Executor executor) {
+        if (compiledQuery.containsCredentialSets()) {
+            // with an executor, the credential queries of the first options are started upfront and only joined once a
+            // set needs them. Later options are only started if the previous ones are not fulfilled, queries not
+            // referenced by any set are never evaluated.
+            SetEvaluation setEvaluation = new SetEvaluation(credentialQueryEvaluation, executor);
+            setEvaluation.fork(firstOptionQueries(compiledQuery.getCredentialSets()));
+            try {
+                // linked map to contain set order
+                Map<Object, List<Credential>> resultMap = new LinkedHashMap<>();
+                for (CompiledCredentialSetQuery credentialSetQuery : compiledQuery.getCredentialSets()) {
+                    List<Credential> credentialsForSet = evaluateCredentialSetQuery(credentialSetQuery, setEvaluation);
+                    if (credentialsForSet.isEmpty() && credentialSetQuery.isRequired()) {
+                        log.debug("The query cannot be fulfilled, since a required set is empty.");
+                        return new QueryResult(false, Map.of());
+                    }
+                    resultMap.put(purposeOrRandom(credentialSetQuery), credentialsForSet);
+                }
+                return new QueryResult(true, resultMap);
+            } finally {
+                ParallelTasks.cancel(setEvaluation.forked);
             }
-            return new QueryResult(true, resultMap);
         } else {
-            List<Credential> selectedCredentials = new ArrayList<>();
-            for (CredentialQuery cq : dcqlQuery.getCredentials()) {
-                List<Credential> credentialsFullfilling = evaluateCredentialQuery(cq, credentialsList);
-                if (credentialsFullfilling.isEmpty()) {
-                    log.debug("When one of the credentials requirements is not fulfilled, the query should fail.");
-                    return new QueryResult(false, Map.of());
+            List<CompiledCredentialQuery> evaluationOrder = evaluationOptions.isCostOrdered() ?
+                    compiledQuery.getCredentialQueriesByCost() :
+                    compiledQuery.getCredentialQueries();
+            List<FutureTask<List<Credential>>> forked = fork(evaluationOrder, credentialQueryEvaluation, executor);
+            try {
+                Map<CompiledCredentialQuery, List<Credential>> fulfillingByQuery = new IdentityHashMap<>();
+                for (int i = 0; i < evaluationOrder.size(); i++) {
+                    CompiledCredentialQuery cq = evaluationOrder.get(i);
+                    // results are checked in evaluation order, to fail exactly like the sequential evaluation
+                    List<Credential> credentialsFullfilling = forked.isEmpty() ?
+                            credentialQueryEvaluation.apply(cq) :
+                            ParallelTasks.join(forked.get(i));
+                    if (credentialsFullfilling.isEmpty()) {
+                        log.debug("When one of the credentials requirements is not fulfilled, the query should fail.");
+                        return new QueryResult(false, Map.of());
+                    }
+                    if (!cq.isMultiple() && credentialsFullfilling.size() != 1) {
+                        log.debug("Multiple credentials where returend for a query not allowing multiple.");
+                        return new QueryResult(false, Map.of());
+                    }
+                    fulfillingByQuery.put(cq, credentialsFullfilling);
                 }
-                if (!cq.getMultiple() && credentialsFullfilling.size() != 1) {
-                    log.debug("Multiple credentials where returend for a query not allowing multiple.");
-                    return new QueryResult(false, Map.of());
+                // return the credentials in the order of the query, independent of the evaluation order
+                List<Credential> selectedCredentials = new ArrayList<>();
+                for (CompiledCredentialQuery cq : compiledQuery.getCredentialQueries()) {
+                    selectedCredentials.addAll(fulfillingByQuery.get(cq));
                 }
-                selectedCredentials.addAll(credentialsFullfilling);
+                // if no sets are requested, put the credentials at one
+                return new QueryResult(true, Map.of(DEFAULT_KEY, selectedCredentials));
+            } finally {
+                ParallelTasks.cancel(forked);
             }
-            // if no sets are requested, put the credentials at one
-            return new QueryResult(true, Map.of(DEFAULT_KEY, selectedCredentials));
         }
 
     }
 
-    private List<Credential> evaluateCredentialSetQuery(Map<String, CredentialQuery> credentialQueryMap,
-                                                        CredentialSetQuery credentialSetQuery,
-                                                        List<Credential> credentials) {
-        for (List<String> option : credentialSetQuery.getOptions()) {
+    // starts the evaluation of the credential queries on the executor. Empty if they should be evaluated sequentially.
+    private static List<FutureTask<List<Credential>>> fork(List<CompiledCredentialQuery> credentialQueries,
+                                                           Function<CompiledCredentialQuery, List<Credential>> credentialQueryEvaluation,
+                                                           Executor executor) {
+        if (executor == null || credentialQueries.size() < 2) {
+            return List.of();
+        }
+        List<Callable<List<Credential>>> evaluations = credentialQueries.stream()
+                .<Callable<List<Credential>>>map(cq -> () -> credentialQueryEvaluation.apply(cq))
+                .toList();
+        return ParallelTasks.fork(executor, evaluations);
+    }
+
+    // the distinct credential queries of the first option of every set, in set order
+    private static List<CompiledCredentialQuery> firstOptionQueries(List<CompiledCredentialSetQuery> credentialSets) {
+        Map<String, CompiledCredentialQuery> firstOptionQueries = new LinkedHashMap<>();
+        for (CompiledCredentialSetQuery credentialSetQuery : credentialSets) {
+            credentialSetQuery.getOptions().get(0).forEach(cq -> firstOptionQueries.putIfAbsent(cq.getId(), cq));
+        }
+        return List.copyOf(firstOptionQueries.values());
+    }
+
+    private List<Credential> evaluateCredentialSetQuery(CompiledCredentialSetQuery credentialSetQuery, SetEvaluation setEvaluation) {
+        for (List<CompiledCredentialQuery> option : credentialSetQuery.getOptions()) {
+            // no-op for the first options, they are already started
+            setEvaluation.fork(option);
             // set to prevent duplicates
             Set<Credential> fullfillingCredentials = new HashSet<>();
             fullfillingCredentials.addAll(
                     option.stream()
-                            .map(credentialQueryMap::get)
-                            .map(cq -> evaluateCredentialQuery(cq, credentials))
+                            .map(cq -> evaluateCredentialQuery(cq, setEvaluation))
                             .flatMap(List::stream)
                             .collect(Collectors.toSet()));
             // return the first option that fulfills the query
@@ -78,33 +334,95 @@ public class DCQLEvaluator {
         return List.of();
     }
 
-    private List<Credential> evaluateCredentialQuery(CredentialQuery credentialQuery, List<Credential> credentialsList) {
+    // evaluates the query only once per request, credential sets require all queries to have an id
+    private List<Credential> evaluateCredentialQuery(CompiledCredentialQuery credentialQuery, SetEvaluation setEvaluation) {
+        List<Credential> evaluated = setEvaluation.evaluatedQueries.get(credentialQuery.getId());
+        if (evaluated != null) {
+            statistics.recordCacheHit();
+            return evaluated;
+        }
+        FutureTask<List<Credential>> pending = setEvaluation.pendingQueries.get(credentialQuery.getId());
+        evaluated = pending != null ?
+                ParallelTasks.join(pending) :
+                setEvaluation.credentialQueryEvaluation.apply(credentialQuery);
+        setEvaluation.evaluatedQueries.put(credentialQuery.getId(), evaluated);
+        return evaluated;
+    }
+
+    /**
+     * State of the evaluation of the credential sets of one request. The results are kept per id, since the same id
+     * can be referenced by multiple options and sets.
+     */
+    private static final class SetEvaluation {
+
+        private final Function<CompiledCredentialQuery, List<Credential>> credentialQueryEvaluation;
+        private final Executor executor;
+        private final Map<String, List<Credential>> evaluatedQueries = new HashMap<>();
+        private final Map<String, FutureTask<List<Credential>>> pendingQueries = new HashMap<>();
+        // all started tasks, to cancel the ones that are not needed anymore
+        private final List<FutureTask<List<Credential>>> forked = new ArrayList<>();
 
-        if (!containsClaims(credentialQuery)
-                && containsClaimSets(credentialQuery)) {
-            throw new IllegalArgumentException("Queries with claim_set require to have claims, too.");
+        private SetEvaluation(Function<CompiledCredentialQuery, List<Credential>> credentialQueryEvaluation, Executor executor) {
+            this.credentialQueryEvaluation = credentialQueryEvaluation;
+            this.executor = executor;
         }
 
+        // starts the queries that are neither evaluated nor started yet
+        private void fork(List<CompiledCredentialQuery> credentialQueries) {
+            List<CompiledCredentialQuery> toStart = credentialQueries.stream()
+                    .filter(cq -> !evaluatedQueries.containsKey(cq.getId()) && !pendingQueries.containsKey(cq.getId()))
+                    .toList();
+            List<FutureTask<List<Credential>>> started = DCQLEvaluator.fork(toStart, credentialQueryEvaluation, executor);
+            for (int i = 0; i < started.size(); i++) {
+                pendingQueries.put(toStart.get(i).getId(), started.get(i));
+            }
+            forked.addAll(started);
+        }
+    }
+
+    private List<Credential> evaluateCredentialQuery(CompiledCredentialQuery credentialQuery, List<Credential> credentialsList) {
+        statistics.recordEvaluation();
         List<Credential> filteredByFormat = filterByFormat(credentialQuery.getFormat(), credentialsList);
-        CredentialEvaluator credentialEvaluator = this.credentialEvaluators
-                .stream()
-                .filter(evaluator -> evaluator.supportedFormat() == credentialQuery.getFormat())
-                .findAny()
-                .orElseThrow(() -> new IllegalArgumentException(String.format("The format %s is not supported. Consider registering a matching evaluator.", credentialQuery.getFormat())));
-        return credentialEvaluator.evaluate(credentialQuery, credentialEvaluator.translate(filteredByFormat));
+        CredentialEvaluator credentialEvaluator = credentialQuery.getCredentialEvaluator();
+        List translated = credentialEvaluator.translate(filteredByFormat);
+        Executor executor = evaluationOptions.getExecutor();
+        if (executor == null
+                || translated.size() < Math.max(evaluationOptions.getParallelThreshold(), 2 * MIN_CHUNK_SIZE)
+                || !credentialEvaluator.evaluatesIndependently(credentialQuery)) {
+            return credentialEvaluator.evaluate(credentialQuery, translated);
+        }
+        return evaluateInChunks(credentialQuery, credentialEvaluator, translated, executor);
+    }
+
+    // splits the credentials into consecutive chunks, the results are concatenated in the original order
+    private static List<Credential> evaluateInChunks(CompiledCredentialQuery credentialQuery, CredentialEvaluator credentialEvaluator,
+                                                     List credentials, Executor executor) {
+        int parallelism = executor instanceof ForkJoinPool forkJoinPool ?
+                forkJoinPool.getParallelism() :
+                Runtime.getRuntime().availableProcessors();
+        int chunkCount = Math.max(1, Math.min(parallelism, credentials.size() / MIN_CHUNK_SIZE));
+        int chunkSize = (credentials.size() + chunkCount - 1) / chunkCount;
+        List<Callable<List<Credential>>> chunkEvaluations = new ArrayList<>(chunkCount);
+        for (int from = 0; from < credentials.size(); from += chunkSize) {
+            List chunk = credentials.subList(from, Math.min(from + chunkSize, credentials.size()));
+            chunkEvaluations.add(() -> credentialEvaluator.evaluate(credentialQuery, chunk));
+        }
+        List<Credential> evaluated = new ArrayList<>();
+        ParallelTasks.joinAll(ParallelTasks.fork(executor, chunkEvaluations)).forEach(evaluated::addAll);
+        return evaluated;
+    }
+
+    private List<Credential> evaluateCredentialQuery(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        statistics.recordEvaluation();
+        return credentialQuery.getCredentialEvaluator().evaluate(credentialQuery, wallet);
     }
 
     // The method returns the first claim set that is fullfilled. It can contain multiple credentials, that would
     // fulfill the set individually, leaving the choice of what to share to the upstream.
-    protected static <T> List<Credential> evaluateForClaimSet(CredentialQuery credentialQuery, List<T> initialCredentials, BiFunction<ClaimsQuery, List<T>, List<T>> evaluationFunction) {
-        Map<String, ClaimsQuery> claimsQueryMap = new HashMap<>();
-        credentialQuery.getClaims()
-                .forEach(cq -> claimsQueryMap.put(cq.getId(), cq));
-
-        for (List<String> claimSet : credentialQuery.getClaimSets()) {
+    protected static <T> List<Credential> evaluateForClaimSet(CompiledCredentialQuery credentialQuery, List<T> initialCredentials, BiFunction<CompiledClaimsQuery, List<T>, List<T>> evaluationFunction) {
+        for (List<CompiledClaimsQuery> claimSet : credentialQuery.getClaimSets()) {
             List<T> credentialsForClaimSet = new ArrayList<>(initialCredentials);
-            for (String claimId : claimSet) {
-                ClaimsQuery claimsQuery = claimsQueryMap.get(claimId);
+            for (CompiledClaimsQuery claimsQuery : claimSet) {
                 credentialsForClaimSet = evaluationFunction.apply(claimsQuery, credentialsForClaimSet);
             }
             if (!credentialsForClaimSet.isEmpty()) {
@@ -142,13 +460,69 @@ public class DCQLEvaluator {
         return dcqlQuery.getCredentialSets() != null && !dcqlQuery.getCredentialSets().isEmpty();
     }
 
-    private static void validateIds(List<CredentialQuery> credentialQueries) {
-        if (credentialQueries.stream().anyMatch(cq -> cq.getId() == null)) {
-            throw new IllegalArgumentException("All credentialQueries need to contain an id.");
+    /**
+     * Everything that determines the credentials returned by the evaluation of a credential query, taken from its
+     * compiled form. Id, multiple and the claim ids are only used when combining the results, thus queries only
+     * differing in those share their evaluation. The order of claims, values and trusted authorities does not change
+     * the result and is ignored, numbers are compared by their value. Only the claim_sets are kept in order, since the
+     * first fulfilled one is used. All parts are copied, so that later changes of the query do not affect the key.
+     */
+    private record CredentialQueryKey(CredentialFormat format,
+                                      Object meta,
+                                      Set<ClaimKey> claims,
+                                      List<Set<ClaimKey>> claimSets,
+                                      Set<TrustedAuthorityKey> trustedAuthorities) {
+
+        static CredentialQueryKey of(CompiledCredentialQuery credentialQuery) {
+            return new CredentialQueryKey(credentialQuery.getFormat(),
+                    metaKey(credentialQuery),
+                    claimKeys(credentialQuery.getClaims()),
+                    credentialQuery.getClaimSets().stream().map(CredentialQueryKey::claimKeys).toList(),
+                    credentialQuery.getTrustedAuthorities().stream()
+                            .map(trustedAuthority -> new TrustedAuthorityKey(trustedAuthority.getType(), Set.copyOf(trustedAuthority.getValues())))
+                            .collect(Collectors.toUnmodifiableSet()));
+        }
+
+        private static Object metaKey(CompiledCredentialQuery credentialQuery) {
+            if (credentialQuery.getW3CMetaData() != null) {
+                return credentialQuery.getW3CMetaData().getTypeValues().stream()
+                        .map(Set::copyOf)
+                        .collect(Collectors.toUnmodifiableSet());
+            }
+            if (credentialQuery.getJwtMetaData() != null) {
+                return Set.copyOf(credentialQuery.getJwtMetaData().getVctValues());
+            }
+            if (credentialQuery.getMDocMetaData() != null) {
+                return credentialQuery.getMDocMetaData().getDocType();
+            }
+            return null;
+        }
+
+        private static Set<ClaimKey> claimKeys(List<CompiledClaimsQuery> claims) {
+            return claims.stream()
+                    .map(ClaimKey::of)
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    /**
+     * The compiled path of a claim, with its normalized values. Null components(wildcards) and null values are kept.
+     */
+    private record ClaimKey(List<Object> path, Set<Object> values) {
+
+        static ClaimKey of(CompiledClaimsQuery claimsQuery) {
+            List<Object> path = new ArrayList<>();
+            claimsQuery.getPath().getComponents().forEach(component -> path.add(ValueMatcher.normalize(component)));
+            Set<Object> values = new HashSet<>();
+            claimsQuery.getValues().forEach(value -> values.add(ValueMatcher.normalize(value)));
+            return new ClaimKey(Collections.unmodifiableList(path), Collections.unmodifiableSet(values));
         }
     }
 
-    private static Object purposeOrRandom(CredentialSetQuery credentialSetQuery) {
+    private record TrustedAuthorityKey(TrustedAuthorityType type, Set<String> values) {
+    }
+
+    private static Object purposeOrRandom(CompiledCredentialSetQuery credentialSetQuery) {
         return Optional.ofNullable(credentialSetQuery.getPurpose()).orElse(UUID.randomUUID().toString());
     }
 }
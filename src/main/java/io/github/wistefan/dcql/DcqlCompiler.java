@@ -0,0 +1,261 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.*;
+
+import java.util.*;
+
+import static io.github.wistefan.dcql.DCQLEvaluator.*;
+
+/**
+ * Compiles {@link DcqlQuery}s into reusable {@link CompiledDcqlQuery} plans. All validation, id resolution, metadata
+ * parsing and evaluator lookup happens once at compile time, evaluation of the plan only does per-credential work.
+ */
+public class DcqlCompiler {
+
+    // relative costs of the evaluation stages, used to order the credential queries
+    private static final int META_COST = 1;
+    private static final int PATH_STEP_COST = 1;
+    private static final int WILDCARD_STEP_COST = 4;
+    private static final int TRUSTED_AUTHORITY_COST = 8;
+    // fraction of the credentials expected to pass the meta filter. Stages after it only run on those.
+    private static final int META_SELECTIVITY = 10;
+
+    private final EvaluatorRegistry evaluatorRegistry;
+
+    public DcqlCompiler(List<CredentialEvaluator> credentialEvaluators) {
+        this(new EvaluatorRegistry(credentialEvaluators));
+    }
+
+    public DcqlCompiler(EvaluatorRegistry evaluatorRegistry) {
+        this.evaluatorRegistry = evaluatorRegistry;
+    }
+
+    /**
+     * Compile the given query. Fails with an {@link IllegalArgumentException} if the query is invalid or contains
+     * formats without a registered evaluator.
+     */
+    public CompiledDcqlQuery compile(DcqlQuery dcqlQuery) {
+        if (dcqlQuery.getCredentials() == null) {
+            throw new IllegalArgumentException("The query needs to contain credential queries.");
+        }
+        List<CompiledCredentialQuery> compiledCredentialQueries = new ArrayList<>();
+        for (CredentialQuery credentialQuery : dcqlQuery.getCredentials()) {
+            compiledCredentialQueries.add(compile(credentialQuery, evaluatorRegistry.getEvaluator(credentialQuery.getFormat())));
+        }
+        List<CompiledCredentialQuery> credentialQueriesByCost = compiledCredentialQueries.stream()
+                .sorted(Comparator.comparingInt(CompiledCredentialQuery::getEstimatedCost))
+                .toList();
+        if (!containsCredentialSets(dcqlQuery)) {
+            return new CompiledDcqlQuery(List.copyOf(compiledCredentialQueries), credentialQueriesByCost, Map.of(), List.of());
+        }
+
+        if (compiledCredentialQueries.stream().anyMatch(cq -> cq.getId() == null)) {
+            throw new IllegalArgumentException("All credentialQueries need to contain an id.");
+        }
+        Map<String, CompiledCredentialQuery> credentialQueryMap = new HashMap<>();
+        compiledCredentialQueries.forEach(cq -> credentialQueryMap.put(cq.getId(), cq));
+
+        List<CompiledCredentialSetQuery> compiledSets = new ArrayList<>();
+        for (CredentialSetQuery credentialSetQuery : dcqlQuery.getCredentialSets()) {
+            List<List<CompiledCredentialQuery>> options = new ArrayList<>();
+            for (List<String> option : credentialSetQuery.getOptions()) {
+                options.add(option.stream()
+                        .map(id -> Optional.ofNullable(credentialQueryMap.get(id))
+                                .orElseThrow(() -> new IllegalArgumentException(String.format("The credential_sets reference the unknown credential query %s.", id))))
+                        .toList());
+            }
+            compiledSets.add(new CompiledCredentialSetQuery(List.copyOf(options),
+                    !Boolean.FALSE.equals(credentialSetQuery.getRequired()),
+                    credentialSetQuery.getPurpose()));
+        }
+        return new CompiledDcqlQuery(List.copyOf(compiledCredentialQueries), credentialQueriesByCost, Map.copyOf(credentialQueryMap), List.copyOf(compiledSets));
+    }
+
+    /**
+     * Compile a single credential query, to be evaluated by the given evaluator.
+     */
+    public static CompiledCredentialQuery compile(CredentialQuery credentialQuery, CredentialEvaluator credentialEvaluator) {
+        if (!containsClaims(credentialQuery)
+                && containsClaimSets(credentialQuery)) {
+            throw new IllegalArgumentException("Queries with claim_set require to have claims, too.");
+        }
+        CredentialFormat format = credentialQuery.getFormat();
+
+        List<CompiledClaimsQuery> claims = List.of();
+        List<List<CompiledClaimsQuery>> claimSets = List.of();
+        if (containsClaims(credentialQuery)) {
+            claims = credentialQuery.getClaims()
+                    .stream()
+                    .map(cq -> copyClaimsQuery(format, cq))
+                    .toList();
+        }
+        if (containsClaimSets(credentialQuery)) {
+            Map<String, CompiledClaimsQuery> claimsQueryMap = new HashMap<>();
+            claims.forEach(cq -> claimsQueryMap.put(cq.getId(), cq));
+            claimSets = credentialQuery.getClaimSets()
+                    .stream()
+                    .map(claimSet -> claimSet.stream()
+                            .map(claimId -> Optional.ofNullable(claimsQueryMap.get(claimId))
+                                    .orElseThrow(() -> new IllegalArgumentException(String.format("The claim_set references the unknown claim %s.", claimId))))
+                            .toList())
+                    .toList();
+        }
+        List<CompiledTrustedAuthorityQuery> trustedAuthorities = List.of();
+        if (containsTrustAuthorities(credentialQuery)) {
+            trustedAuthorities = credentialQuery.getTrustedAuthorities()
+                    .stream()
+                    .map(DcqlCompiler::compile)
+                    .toList();
+            // fail for every evaluation, not only if a credential reaches the stage of the unsupported authority
+            trustedAuthorities.forEach(taq -> TrustedAuthoritiesEvaluator.checkSupported(taq.getType()));
+        }
+
+        W3CMetaData w3CMetaData = null;
+        JwtMetaData jwtMetaData = null;
+        MDocMetaData mDocMetaData = null;
+        if (containsMeta(credentialQuery)) {
+            switch (format) {
+                case JWT_VC_JSON, LDP_VC -> w3CMetaData = W3CMetaData.fromMeta(credentialQuery.getMeta());
+                case VC_SD_JWT, DC_SD_JWT -> jwtMetaData = JwtMetaData.fromMeta(credentialQuery.getMeta());
+                case MSO_MDOC -> mDocMetaData = MDocMetaData.fromMeta(credentialQuery.getMeta());
+            }
+        }
+
+        return new CompiledCredentialQuery(copy(credentialQuery),
+                credentialQuery.getId(),
+                format,
+                Boolean.TRUE.equals(credentialQuery.getMultiple()),
+                credentialEvaluator,
+                claims,
+                claimSets,
+                ClaimPathTrie.compile(claims),
+                claimSets.stream().map(ClaimPathTrie::compile).toList(),
+                trustedAuthorities,
+                w3CMetaData,
+                jwtMetaData,
+                mDocMetaData,
+                estimateCost(claims, claimSets, trustedAuthorities, containsMeta(credentialQuery)));
+    }
+
+    // claims and trusted authorities are evaluated on every credential of the format, unless the meta filter already
+    // discarded most of them. If claim_sets are present, all of them might need to be evaluated.
+    private static int estimateCost(List<CompiledClaimsQuery> claims,
+                                    List<List<CompiledClaimsQuery>> claimSets,
+                                    List<CompiledTrustedAuthorityQuery> trustedAuthorities,
+                                    boolean containsMeta) {
+        int stageCost = trustedAuthorities.size() * TRUSTED_AUTHORITY_COST;
+        if (claimSets.isEmpty()) {
+            stageCost += claims.stream().mapToInt(DcqlCompiler::estimateCost).sum();
+        } else {
+            stageCost += claimSets.stream().flatMap(List::stream).mapToInt(DcqlCompiler::estimateCost).sum();
+        }
+        if (containsMeta) {
+            return META_COST + stageCost / META_SELECTIVITY;
+        }
+        return stageCost;
+    }
+
+    private static int estimateCost(CompiledClaimsQuery claimsQuery) {
+        int cost = 0;
+        for (Object component : claimsQuery.getPath().getComponents()) {
+            cost += component == null ? WILDCARD_STEP_COST : PATH_STEP_COST;
+        }
+        return cost;
+    }
+
+    /**
+     * Compile a single claims query. The path is used as provided, without any format-specific translation.
+     */
+    public static CompiledClaimsQuery compile(ClaimsQuery claimsQuery) {
+        return compile(claimsQuery, claimsQuery.getPath());
+    }
+
+    /**
+     * Compile a single trusted authority query. Aki values are decoded once.
+     */
+    public static CompiledTrustedAuthorityQuery compile(TrustedAuthorityQuery trustedAuthorityQuery) {
+        List<String> values = trustedAuthorityQuery.getValues() == null ? List.of() : List.copyOf(trustedAuthorityQuery.getValues());
+        Set<KeyIdentifier> authorityKeyIdentifiers = trustedAuthorityQuery.getType() == TrustedAuthorityType.AKI ?
+                TrustedAuthoritiesEvaluator.decodeAki(values) :
+                Set.of();
+        return new CompiledTrustedAuthorityQuery(new TrustedAuthorityQuery(trustedAuthorityQuery.getType(), values),
+                trustedAuthorityQuery.getType(), values, authorityKeyIdentifiers);
+    }
+
+    // Paths of mdoc-queries are translated to their location inside the credential.
+    private static CompiledClaimsQuery copyClaimsQuery(CredentialFormat format, ClaimsQuery claimsQuery) {
+        List<Object> path = format == CredentialFormat.MSO_MDOC ?
+                MDocCredentialEvaluator.toMDocPath(claimsQuery) :
+                claimsQuery.getPath();
+        return compile(claimsQuery, path);
+    }
+
+    // copy the query, to not be affected by later changes of the original.
+    private static CompiledClaimsQuery compile(ClaimsQuery claimsQuery, List<Object> path) {
+        ClaimPath claimPath = ClaimPath.compile(path == null ? null : unmodifiableCopy(path));
+        List<Object> values = claimsQuery.getValues() == null ? List.of() : unmodifiableCopy(claimsQuery.getValues());
+        ClaimsQuery copy = new ClaimsQuery(claimsQuery.getId(), claimPath.getComponents(), values);
+        copy.setIntent_to_retain(claimsQuery.getIntent_to_retain());
+        copy.setNamespace(claimsQuery.getNamespace());
+        copy.setClaimName(claimsQuery.getClaimName());
+        return new CompiledClaimsQuery(copy, claimsQuery.getId(), claimPath, values, ValueMatcher.of(values));
+    }
+
+    /**
+     * Deep copy of the credential query, with unmodifiable collections.
+     */
+    static CredentialQuery copy(CredentialQuery credentialQuery) {
+        CredentialQuery copy = new CredentialQuery();
+        copy.setId(credentialQuery.getId());
+        copy.setFormat(credentialQuery.getFormat());
+        copy.setMultiple(credentialQuery.getMultiple());
+        copy.setRequireCryptographicHolderBinding(credentialQuery.getRequireCryptographicHolderBinding());
+        if (credentialQuery.getMeta() != null) {
+            copy.setMeta(deepCopy(credentialQuery.getMeta()));
+        }
+        if (credentialQuery.getClaims() != null) {
+            copy.setClaims(credentialQuery.getClaims().stream().map(DcqlCompiler::copy).toList());
+        }
+        if (credentialQuery.getClaimSets() != null) {
+            copy.setClaimSets(credentialQuery.getClaimSets().stream().map(DcqlCompiler::unmodifiableCopy).toList());
+        }
+        if (credentialQuery.getTrustedAuthorities() != null) {
+            copy.setTrustedAuthorities(credentialQuery.getTrustedAuthorities()
+                    .stream()
+                    .map(taq -> new TrustedAuthorityQuery(taq.getType(), taq.getValues() == null ? null : unmodifiableCopy(taq.getValues())))
+                    .toList());
+        }
+        return copy;
+    }
+
+    private static ClaimsQuery copy(ClaimsQuery claimsQuery) {
+        ClaimsQuery copy = new ClaimsQuery(claimsQuery.getId(),
+                claimsQuery.getPath() == null ? null : unmodifiableCopy(claimsQuery.getPath()),
+                claimsQuery.getValues() == null ? null : unmodifiableCopy(claimsQuery.getValues()));
+        copy.setIntent_to_retain(claimsQuery.getIntent_to_retain());
+        copy.setNamespace(claimsQuery.getNamespace());
+        copy.setClaimName(claimsQuery.getClaimName());
+        return copy;
+    }
+
+    // meta values are arbitrary json, thus nested objects and arrays are copied as well
+    @SuppressWarnings("unchecked")
+    private static <T> T deepCopy(T value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, entry) -> copy.put(key, deepCopy(entry)));
+            return (T) Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(element -> copy.add(deepCopy(element)));
+            return (T) Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    // paths contain null for the wildcard selector, thus List.copyOf cannot be used
+    private static <T> List<T> unmodifiableCopy(List<T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.wistefan.dcql;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.With;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Options to tune the evaluation of the {@link DCQLEvaluator}. None of them change the result of a query.
+ */
+@Getter
+@With
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class EvaluationOptions {
+
+    /**
+     * Minimum number of credentials of a format, before they are split across the executor.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * Evaluate the credential queries in declaration order, on the calling thread.
+     */
+    public static final EvaluationOptions DEFAULT = new EvaluationOptions(false, null, DEFAULT_PARALLEL_THRESHOLD);
+
+    /**
+     * If no credential_sets are requested, every credential query has to be fulfilled. When enabled, the cheapest
+     * and most selective queries are evaluated first, so that unsatisfiable requests are rejected as early as
+     * possible. The returned credentials stay in declaration order.
+     */
+    private final boolean costOrdered;
+
+    /**
+     * Executor(e.g. a {@link java.util.concurrent.ForkJoinPool}) to evaluate the credential queries of a request
+     * concurrently. Lists of credentials reaching the parallelThreshold are additionally split into chunks, if the
+     * evaluator supports it. The candidates of a {@link CredentialWallet} are not split, they are evaluated on one
+     * thread per credential query. Results and their order are the same as for the sequential evaluation. Null to evaluate
+     * on the calling thread.
+     */
+    private final Executor executor;
+
+    /**
+     * Minimum number of credentials of a format, before they are split into chunks. Only used with an executor and for
+     * lists of credentials.
+     */
+    private final int parallelThreshold;
+}
@@ -0,0 +1,40 @@
+package io.github.wistefan.dcql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link DCQLEvaluator}, accumulated over all evaluations. Safe to be updated and read concurrently.
+ */
+public class EvaluationStatistics {
+
+    private final LongAdder credentialQueryEvaluations = new LongAdder();
+    private final LongAdder credentialQueryCacheHits = new LongAdder();
+
+    /**
+     * Number of credential queries that were evaluated against the credentials.
+     */
+    public long getCredentialQueryEvaluations() {
+        return credentialQueryEvaluations.sum();
+    }
+
+    /**
+     * Number of credential query evaluations that were answered from the per-request cache, instead of evaluating
+     * them again. Happens if a credential query is referenced by multiple options of the credential_sets.
+     */
+    public long getCredentialQueryCacheHits() {
+        return credentialQueryCacheHits.sum();
+    }
+
+    public void reset() {
+        credentialQueryEvaluations.reset();
+        credentialQueryCacheHits.reset();
+    }
+
+    void recordEvaluation() {
+        credentialQueryEvaluations.increment();
+    }
+
+    void recordCacheHit() {
+        credentialQueryCacheHits.increment();
+    }
+}
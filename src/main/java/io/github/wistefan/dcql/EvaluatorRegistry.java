@@ -0,0 +1,69 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.CredentialFormat;
+
+import java.util.*;
+
+/**
+ * Dispatch table from {@link CredentialFormat} to the {@link CredentialEvaluator} responsible for it. Built once and
+ * immutable afterwards, lookups are constant time.
+ */
+public class EvaluatorRegistry {
+
+    private final Map<CredentialFormat, CredentialEvaluator> evaluators;
+
+    /**
+     * Create a registry for the given evaluators. Fails with an {@link IllegalArgumentException} if multiple
+     * evaluators support the same format.
+     */
+    public EvaluatorRegistry(Iterable<? extends CredentialEvaluator> credentialEvaluators) {
+        EnumMap<CredentialFormat, CredentialEvaluator> evaluatorMap = new EnumMap<>(CredentialFormat.class);
+        for (CredentialEvaluator credentialEvaluator : credentialEvaluators) {
+            CredentialFormat format = credentialEvaluator.supportedFormat();
+            CredentialEvaluator registered = evaluatorMap.putIfAbsent(format, credentialEvaluator);
+            if (registered != null) {
+                throw new IllegalArgumentException(String.format("Multiple evaluators for format %s: %s and %s.",
+                        format, registered.getClass().getName(), credentialEvaluator.getClass().getName()));
+            }
+        }
+        this.evaluators = Collections.unmodifiableMap(evaluatorMap);
+    }
+
+    /**
+     * Create a registry from all {@link CredentialEvaluator}s registered through the {@link ServiceLoader}, including
+     * the evaluators provided by this library.
+     */
+    public static EvaluatorRegistry load() {
+        return load(EvaluatorRegistry.class.getClassLoader());
+    }
+
+    /**
+     * Create a registry from all {@link CredentialEvaluator}s registered through the {@link ServiceLoader} of the given
+     * class loader.
+     */
+    public static EvaluatorRegistry load(ClassLoader classLoader) {
+        return new EvaluatorRegistry(ServiceLoader.load(CredentialEvaluator.class, classLoader));
+    }
+
+    /**
+     * Returns the evaluator for the format. Fails with an {@link IllegalArgumentException} if none is registered.
+     */
+    public CredentialEvaluator getEvaluator(CredentialFormat credentialFormat) {
+        CredentialEvaluator credentialEvaluator = credentialFormat == null ? null : evaluators.get(credentialFormat);
+        if (credentialEvaluator == null) {
+            throw new IllegalArgumentException(String.format("The format %s is not supported. Consider registering a matching evaluator.", credentialFormat));
+        }
+        return credentialEvaluator;
+    }
+
+    public boolean supports(CredentialFormat credentialFormat) {
+        return credentialFormat != null && evaluators.containsKey(credentialFormat);
+    }
+
+    /**
+     * The formats supported by the registered evaluators.
+     */
+    public Set<CredentialFormat> getSupportedFormats() {
+        return evaluators.keySet();
+    }
+}
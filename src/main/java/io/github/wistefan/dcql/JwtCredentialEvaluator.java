@@ -3,10 +3,11 @@ package io.github.wistefan.dcql;
 import io.github.wistefan.dcql.model.*;
 import io.github.wistefan.dcql.model.credential.JwtCredential;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntFunction;
 
 import static io.github.wistefan.dcql.DCQLEvaluator.*;
 
@@ -14,6 +15,9 @@ import static io.github.wistefan.dcql.DCQLEvaluator.*;
  * Evaluator implementation for JWT Credentials
  */
 public class JwtCredentialEvaluator implements CredentialEvaluator<JwtCredential> {
+
+    private final StagePlanner stagePlanner = new StagePlanner();
+
     @Override
     public CredentialFormat supportedFormat() {
         return CredentialFormat.JWT_VC_JSON;
@@ -27,41 +31,75 @@ public class JwtCredentialEvaluator implements CredentialEvaluator<JwtCredential
 
     @Override
     public List<Credential> evaluate(CredentialQuery credentialQuery, List<JwtCredential> jwtCredentials) {
-        if (containsMeta(credentialQuery)) {
-            jwtCredentials = filterJwtByMetadata(credentialQuery.getMeta(), jwtCredentials);
+        return evaluate(DcqlCompiler.compile(credentialQuery, this), jwtCredentials);
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, List<JwtCredential> jwtCredentials) {
+        jwtCredentials = stagePlanner.filter(stages(credentialQuery, true, true, true), jwtCredentials);
+        if (credentialQuery.containsClaimSets()) {
+            jwtCredentials = stagePlanner.filterFirst(claimSetStages(credentialQuery), jwtCredentials);
         }
-        if (containsTrustAuthorities(credentialQuery)) {
-            for (TrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
-                jwtCredentials = jwtCredentials.stream()
-                        .filter(credential -> TrustedAuthoritiesEvaluator.evaluateQueryForJwtCredential(taq, credential))
-                        .toList();
-            }
+        return CredentialMapper.toCredentials(CredentialFormat.JWT_VC_JSON, jwtCredentials);
+    }
+
+    // claim_sets select the first set fulfilled by any of the credentials, everything else is decided per credential
+    @Override
+    public boolean evaluatesIndependently(CompiledCredentialQuery credentialQuery) {
+        return !credentialQuery.containsClaimSets();
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        // the metadata(and aki and claim values, if indexed) is already applied through the indexes of the wallet, the
+        // other stages narrow the candidates in place
+        BitSet candidates = wallet.candidates(credentialQuery);
+        boolean applyAki = !wallet.resolvesAuthorityKeyIdentifiers(credentialQuery.getFormat());
+        boolean applyClaims = !wallet.resolvesClaims(credentialQuery);
+        IntFunction<JwtCredential> credentialAt = position -> (JwtCredential) wallet.getRawCredential(position);
+        stagePlanner.filter(stages(credentialQuery, false, applyAki, applyClaims), candidates, credentialAt);
+        if (credentialQuery.containsClaimSets()) {
+            candidates = stagePlanner.filterFirst(claimSetStages(credentialQuery), candidates, credentialAt);
+        }
+        return wallet.materialize(candidates);
+    }
+
+    private List<StagePlanner.Stage<JwtCredential>> stages(CompiledCredentialQuery credentialQuery, boolean applyMeta, boolean applyAki,
+                                                           boolean applyClaims) {
+        List<StagePlanner.Stage<JwtCredential>> stages = new ArrayList<>();
+        if (applyMeta && credentialQuery.containsMeta()) {
+            W3CMetaData w3CMetaData = credentialQuery.getW3CMetaData();
+            stages.add(StagePlanner.metaStage(w3CMetaData.getTypeValues(), credential -> matchesMetadata(w3CMetaData, credential)));
         }
-        if (containsClaims(credentialQuery) && !containsClaimSets(credentialQuery)) {
-            for (ClaimsQuery cq : credentialQuery.getClaims()) {
-                jwtCredentials = evaluateJwtCredentialsClaimQuery(cq, jwtCredentials);
+        for (CompiledTrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
+            if (!applyAki && taq.getType() == TrustedAuthorityType.AKI) {
+                continue;
             }
-        } else if (containsClaims(credentialQuery)) {
-            return evaluateForClaimSet(credentialQuery, jwtCredentials, JwtCredentialEvaluator::evaluateJwtCredentialsClaimQuery);
+            stages.add(StagePlanner.trustedAuthorityStage(taq,
+                    credential -> TrustedAuthoritiesEvaluator.evaluateQueryForJwtCredential(taq, credential)));
         }
-        return CredentialMapper.toCredentials(CredentialFormat.JWT_VC_JSON, jwtCredentials);
+        if (applyClaims && credentialQuery.containsClaims() && !credentialQuery.containsClaimSets()) {
+            stages.add(claimsStage(credentialQuery.getClaimsTrie()));
+        }
+        return stages;
     }
 
-    private static List<JwtCredential> filterJwtByMetadata(Map<String, Object> metaData, List<JwtCredential> credentialsList) {
-        W3CMetaData w3CMetaData = W3CMetaData.fromMeta(metaData);
-        return credentialsList.stream()
-                .filter(jwtCredential ->
-                        w3CMetaData.getTypeValues()
-                                .stream()
-                                .anyMatch(metaTypes -> new HashSet<>(jwtCredential.getType()).containsAll(metaTypes)))
+    private static List<List<StagePlanner.Stage<JwtCredential>>> claimSetStages(CompiledCredentialQuery credentialQuery) {
+        return credentialQuery.getClaimSetTries()
+                .stream()
+                .map(claimSetTrie -> List.of(claimsStage(claimSetTrie)))
                 .toList();
     }
 
-    private static List<JwtCredential> evaluateJwtCredentialsClaimQuery(ClaimsQuery cq, List<JwtCredential> jwtCredentials) {
-        return jwtCredentials.stream()
-                .map(credential -> ClaimsEvaluator.evaluateClaimsForJwtCredential(cq, credential))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
+    // all claims are evaluated in a single traversal of the payload
+    private static StagePlanner.Stage<JwtCredential> claimsStage(ClaimPathTrie claimPathTrie) {
+        return StagePlanner.claimsStage(claimPathTrie, credential -> ClaimsEvaluator.matchesAll(claimPathTrie, credential.getPayload()));
+    }
+
+    private static boolean matchesMetadata(W3CMetaData w3CMetaData, JwtCredential jwtCredential) {
+        Set<String> types = jwtCredential.getTypeSet();
+        return w3CMetaData.getTypeValues()
+                .stream()
+                .anyMatch(types::containsAll);
     }
 }
@@ -0,0 +1,54 @@
+package io.github.wistefan.dcql;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Immutable key identifier, e.g. the keyIdentifier of an AuthorityKeyIdentifier extension. Compared by its bytes, thus
+ * usable as key in hash based collections.
+ */
+public final class KeyIdentifier {
+
+    private final byte[] bytes;
+    private final int hashCode;
+
+    private KeyIdentifier(byte[] bytes) {
+        this.bytes = bytes;
+        this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    public static KeyIdentifier of(byte[] bytes) {
+        return new KeyIdentifier(bytes.clone());
+    }
+
+    /**
+     * Decode the base64url encoded identifier, as used in trusted_authorities queries. Fails with an
+     * {@link IllegalArgumentException} if the value is not valid base64url.
+     */
+    public static KeyIdentifier fromBase64Url(String value) {
+        return new KeyIdentifier(Base64.getUrlDecoder().decode(value));
+    }
+
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    public String toBase64Url() {
+        return Base64.getUrlEncoder().encodeToString(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof KeyIdentifier other && hashCode == other.hashCode && Arrays.equals(bytes, other.bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return toBase64Url();
+    }
+}
@@ -3,10 +3,11 @@ package io.github.wistefan.dcql;
 import io.github.wistefan.dcql.model.*;
 import io.github.wistefan.dcql.model.credential.LdpCredential;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntFunction;
 
 import static io.github.wistefan.dcql.DCQLEvaluator.*;
 
@@ -15,6 +16,8 @@ import static io.github.wistefan.dcql.DCQLEvaluator.*;
  */
 public class LdpCredentialEvaluator implements CredentialEvaluator<LdpCredential> {
 
+    private final StagePlanner stagePlanner = new StagePlanner();
+
     @Override
     public CredentialFormat supportedFormat() {
         return CredentialFormat.LDP_VC;
@@ -27,39 +30,67 @@ public class LdpCredentialEvaluator implements CredentialEvaluator<LdpCredential
 
     @Override
     public List<Credential> evaluate(CredentialQuery credentialQuery, List<LdpCredential> ldpCredentials) {
+        return evaluate(DcqlCompiler.compile(credentialQuery, this), ldpCredentials);
+    }
 
-        if (containsMeta(credentialQuery)) {
-            ldpCredentials = filterLdpByMetadata(credentialQuery.getMeta(), ldpCredentials);
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, List<LdpCredential> ldpCredentials) {
+        ldpCredentials = stagePlanner.filter(stages(credentialQuery, true, true), ldpCredentials);
+        if (credentialQuery.containsClaimSets()) {
+            ldpCredentials = stagePlanner.filterFirst(claimSetStages(credentialQuery), ldpCredentials);
         }
+        return CredentialMapper.toCredentials(CredentialFormat.LDP_VC, ldpCredentials);
+    }
 
-        if (containsClaims(credentialQuery) && !containsClaimSets(credentialQuery)) {
-            for (ClaimsQuery cq : credentialQuery.getClaims()) {
-                ldpCredentials = evaluateLdpCredentialsClaimQuery(cq, ldpCredentials);
-            }
-        } else if (containsClaims(credentialQuery)) {
-            return evaluateForClaimSet(credentialQuery, ldpCredentials, LdpCredentialEvaluator::evaluateLdpCredentialsClaimQuery);
-        }
+    // claim_sets select the first set fulfilled by any of the credentials, everything else is decided per credential
+    @Override
+    public boolean evaluatesIndependently(CompiledCredentialQuery credentialQuery) {
+        return !credentialQuery.containsClaimSets();
+    }
 
-        return CredentialMapper.toCredentials(CredentialFormat.LDP_VC, ldpCredentials);
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        // the metadata(and claim values, if indexed) is already applied through the indexes of the wallet, the other
+        // stages narrow the candidates in place
+        BitSet candidates = wallet.candidates(credentialQuery);
+        IntFunction<LdpCredential> credentialAt = position -> (LdpCredential) wallet.getRawCredential(position);
+        stagePlanner.filter(stages(credentialQuery, false, !wallet.resolvesClaims(credentialQuery)), candidates, credentialAt);
+        if (credentialQuery.containsClaimSets()) {
+            candidates = stagePlanner.filterFirst(claimSetStages(credentialQuery), candidates, credentialAt);
+        }
+        return wallet.materialize(candidates);
     }
 
+    private List<StagePlanner.Stage<LdpCredential>> stages(CompiledCredentialQuery credentialQuery, boolean applyMeta, boolean applyClaims) {
+        List<StagePlanner.Stage<LdpCredential>> stages = new ArrayList<>();
+        if (applyMeta && credentialQuery.containsMeta()) {
+            W3CMetaData w3CMetaData = credentialQuery.getW3CMetaData();
+            stages.add(StagePlanner.metaStage(w3CMetaData.getTypeValues(), credential -> matchesMetadata(w3CMetaData, credential)));
+        }
+        if (applyClaims && credentialQuery.containsClaims() && !credentialQuery.containsClaimSets()) {
+            stages.add(claimsStage(credentialQuery.getClaimsTrie()));
+        }
+        return stages;
+    }
 
-    private static List<LdpCredential> filterLdpByMetadata(Map<String, Object> metaData, List<LdpCredential> credentialsList) {
-        W3CMetaData w3CMetaData = W3CMetaData.fromMeta(metaData);
-        return credentialsList.stream()
-                .filter(ldpCredential ->
-                        w3CMetaData.getTypeValues()
-                                .stream()
-                                .anyMatch(metaTypes -> new HashSet<>(ldpCredential.getType()).containsAll(metaTypes)))
+    private static List<List<StagePlanner.Stage<LdpCredential>>> claimSetStages(CompiledCredentialQuery credentialQuery) {
+        return credentialQuery.getClaimSetTries()
+                .stream()
+                .map(claimSetTrie -> List.of(claimsStage(claimSetTrie)))
                 .toList();
     }
 
-    private static List<LdpCredential> evaluateLdpCredentialsClaimQuery(ClaimsQuery cq, List<LdpCredential> ldpCredentials) {
-        return ldpCredentials.stream()
-                .map(credential -> ClaimsEvaluator.evaluateClaimsForLdpCredential(cq, credential))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
+    // all claims are evaluated in a single traversal of the credential
+    private static StagePlanner.Stage<LdpCredential> claimsStage(ClaimPathTrie claimPathTrie) {
+        return StagePlanner.claimsStage(claimPathTrie, credential -> ClaimsEvaluator.matchesAll(claimPathTrie, credential.getTheCredential()));
+    }
+
+
+    private static boolean matchesMetadata(W3CMetaData w3CMetaData, LdpCredential ldpCredential) {
+        Set<String> types = ldpCredential.getTypeSet();
+        return w3CMetaData.getTypeValues()
+                .stream()
+                .anyMatch(types::containsAll);
     }
 
 }
@@ -3,9 +3,10 @@ package io.github.wistefan.dcql;
 import io.github.wistefan.dcql.model.*;
 import io.github.wistefan.dcql.model.credential.MDocCredential;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.function.IntFunction;
 
 import static io.github.wistefan.dcql.DCQLEvaluator.*;
 
@@ -17,6 +18,8 @@ public class MDocCredentialEvaluator implements CredentialEvaluator<MDocCredenti
     // key to the namespaces in an MDoc credential
     private static final String MDOC_NAMESPACE_KEY = "namespaces";
 
+    private final StagePlanner stagePlanner = new StagePlanner();
+
     @Override
     public CredentialFormat supportedFormat() {
         return CredentialFormat.MSO_MDOC;
@@ -29,55 +32,84 @@ public class MDocCredentialEvaluator implements CredentialEvaluator<MDocCredenti
 
     @Override
     public List<Credential> evaluate(CredentialQuery credentialQuery, List<MDocCredential> mDocCredentials) {
-        if (containsMeta(credentialQuery)) {
-            mDocCredentials = filterMDocByMetadata(credentialQuery.getMeta(), mDocCredentials);
+        return evaluate(DcqlCompiler.compile(credentialQuery, this), mDocCredentials);
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, List<MDocCredential> mDocCredentials) {
+        mDocCredentials = stagePlanner.filter(stages(credentialQuery, true, true, true), mDocCredentials);
+        if (credentialQuery.containsClaimSets()) {
+            mDocCredentials = stagePlanner.filterFirst(claimSetStages(credentialQuery), mDocCredentials);
         }
-        if (containsTrustAuthorities(credentialQuery)) {
-            for (TrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
-                mDocCredentials = mDocCredentials.stream()
-                        .filter(credential -> TrustedAuthoritiesEvaluator.evaluateQueryForMDocCredential(taq, credential))
-                        .toList();
-            }
+        return CredentialMapper.toCredentials(CredentialFormat.MSO_MDOC, mDocCredentials);
+    }
+
+    // claim_sets select the first set fulfilled by any of the credentials, everything else is decided per credential
+    @Override
+    public boolean evaluatesIndependently(CompiledCredentialQuery credentialQuery) {
+        return !credentialQuery.containsClaimSets();
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        // the metadata(and aki and claim values, if indexed) is already applied through the indexes of the wallet, the
+        // other stages narrow the candidates in place
+        BitSet candidates = wallet.candidates(credentialQuery);
+        boolean applyAki = !wallet.resolvesAuthorityKeyIdentifiers(credentialQuery.getFormat());
+        boolean applyClaims = !wallet.resolvesClaims(credentialQuery);
+        IntFunction<MDocCredential> credentialAt = position -> (MDocCredential) wallet.getRawCredential(position);
+        stagePlanner.filter(stages(credentialQuery, false, applyAki, applyClaims), candidates, credentialAt);
+        if (credentialQuery.containsClaimSets()) {
+            candidates = stagePlanner.filterFirst(claimSetStages(credentialQuery), candidates, credentialAt);
         }
-        translateMDocQueries(credentialQuery);
-        if (containsClaims(credentialQuery) && !containsClaimSets(credentialQuery)) {
-            for (ClaimsQuery cq : credentialQuery.getClaims()) {
-                mDocCredentials = evaluateMDocCredentialsClaimQuery(cq, mDocCredentials);
+        return wallet.materialize(candidates);
+    }
+
+    private List<StagePlanner.Stage<MDocCredential>> stages(CompiledCredentialQuery credentialQuery, boolean applyMeta, boolean applyAki,
+                                                            boolean applyClaims) {
+        List<StagePlanner.Stage<MDocCredential>> stages = new ArrayList<>();
+        if (applyMeta && credentialQuery.containsMeta()) {
+            MDocMetaData mDocMetaData = credentialQuery.getMDocMetaData();
+            stages.add(StagePlanner.metaStage(mDocMetaData.getDocType(), credential -> credential.getDocType().equals(mDocMetaData.getDocType())));
+        }
+        for (CompiledTrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
+            if (!applyAki && taq.getType() == TrustedAuthorityType.AKI) {
+                continue;
             }
-        } else if (containsClaims(credentialQuery)) {
-            return evaluateForClaimSet(credentialQuery, mDocCredentials, MDocCredentialEvaluator::evaluateMDocCredentialsClaimQuery);
+            stages.add(StagePlanner.trustedAuthorityStage(taq,
+                    credential -> TrustedAuthoritiesEvaluator.evaluateQueryForMDocCredential(taq, credential)));
         }
-        return CredentialMapper.toCredentials(CredentialFormat.MSO_MDOC, mDocCredentials);
+        if (applyClaims && credentialQuery.containsClaims() && !credentialQuery.containsClaimSets()) {
+            stages.add(claimsStage(credentialQuery.getClaimsTrie()));
+        }
+        return stages;
     }
 
-    private static List<MDocCredential> filterMDocByMetadata(Map<String, Object> metaData, List<MDocCredential> credentialsList) {
-        MDocMetaData mDocMetaData = MDocMetaData.fromMeta(metaData);
-        return credentialsList.stream()
-                .filter(mDocCredential -> mDocCredential.getDocType().equals(mDocMetaData.getDocType()))
+    private static List<List<StagePlanner.Stage<MDocCredential>>> claimSetStages(CompiledCredentialQuery credentialQuery) {
+        return credentialQuery.getClaimSetTries()
+                .stream()
+                .map(claimSetTrie -> List.of(claimsStage(claimSetTrie)))
                 .toList();
     }
 
-    private static CredentialQuery translateMDocQueries(CredentialQuery credentialQuery) {
-        if (credentialQuery.getClaims() == null) {
-            return credentialQuery;
-        }
-        credentialQuery.getClaims()
-                .forEach(cq -> {
-                    if (isMDocClaimsQuery(cq) && cq.getNamespace() != null) {
-                        cq.setPath(List.of(MDOC_NAMESPACE_KEY, cq.getNamespace(), cq.getClaimName()));
-                    } else {
-                        cq.getPath().addFirst(MDOC_NAMESPACE_KEY);
-                    }
-                });
-        return credentialQuery;
+    // all claims are evaluated in a single traversal of the credential
+    private static StagePlanner.Stage<MDocCredential> claimsStage(ClaimPathTrie claimPathTrie) {
+        return StagePlanner.claimsStage(claimPathTrie, credential -> ClaimsEvaluator.matchesAll(claimPathTrie, credential.getPayload()));
     }
 
-    private static List<MDocCredential> evaluateMDocCredentialsClaimQuery(ClaimsQuery cq, List<MDocCredential> mDocCredentials) {
-        return mDocCredentials.stream()
-                .map(credential -> ClaimsEvaluator.evaluateClaimsForMDocCredential(cq, credential))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
+    /**
+     * Translates the path of the claims query to the location of the claim inside the credential.
+     */
+    static List<Object> toMDocPath(ClaimsQuery claimsQuery) {
+        if (isMDocClaimsQuery(claimsQuery) && claimsQuery.getNamespace() != null) {
+            return List.of(MDOC_NAMESPACE_KEY, claimsQuery.getNamespace(), claimsQuery.getClaimName());
+        }
+        if (claimsQuery.getPath() == null) {
+            return null;
+        }
+        List<Object> mDocPath = new ArrayList<>(claimsQuery.getPath());
+        mDocPath.addFirst(MDOC_NAMESPACE_KEY);
+        return mDocPath;
     }
 
     private static boolean isMDocClaimsQuery(ClaimsQuery claimsQuery) {
@@ -0,0 +1,76 @@
+package io.github.wistefan.dcql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs tasks on an executor, while the waiting thread executes all tasks that were not yet started by the executor
+ * itself. Thus, tasks can wait for nested tasks on the same(bounded) executor without starving it, and a rejecting
+ * executor degrades to sequential execution.
+ */
+final class ParallelTasks {
+
+    private ParallelTasks() {
+        // static helper
+    }
+
+    /**
+     * Hand the tasks to the executor. The results have to be retrieved via {@link #join(FutureTask)}.
+     */
+    static <T> List<FutureTask<T>> fork(Executor executor, List<Callable<T>> callables) {
+        List<FutureTask<T>> tasks = new ArrayList<>(callables.size());
+        for (Callable<T> callable : callables) {
+            FutureTask<T> task = new FutureTask<>(callable);
+            tasks.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // will be run by the joining thread
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the result of the task. Runs it on the current thread, if it was not started yet. Exceptions thrown by
+     * the task are rethrown unchanged, if possible.
+     */
+    static <T> T join(FutureTask<T> task) {
+        // no-op if the task is already running or done
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("Interrupted while waiting for the evaluation.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new EvaluationException("Was not able to evaluate the query.", cause);
+        }
+    }
+
+    /**
+     * Returns the results of all tasks, in order.
+     */
+    static <T> List<T> joinAll(List<FutureTask<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (FutureTask<T> task : tasks) {
+            results.add(join(task));
+        }
+        return results;
+    }
+
+    /**
+     * Cancel the tasks that are not needed anymore. Already running tasks are not interrupted.
+     */
+    static void cancel(Iterable<? extends Future<?>> tasks) {
+        tasks.forEach(task -> task.cancel(false));
+    }
+}
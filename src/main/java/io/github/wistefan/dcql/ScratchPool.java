@@ -0,0 +1,55 @@
+package io.github.wistefan.dcql;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Reusable instances of mutable helpers(scratch buffers, message digests), that may only be used by one thread at a
+ * time. Platform threads keep their own instance, like with a {@link ThreadLocal}. Virtual threads are created per
+ * task, thus a thread local would be created again for every evaluation. They share a bounded pool instead, instances
+ * are only created if the pool is empty and dropped if it is full.
+ */
+final class ScratchPool<T> {
+
+    // a traversal does not block, thus usually not more virtual threads than carriers hold an instance at a time
+    private static final int DEFAULT_CAPACITY = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Supplier<T> factory;
+    private final ThreadLocal<T> platformThreadInstances;
+    private final BlockingQueue<T> virtualThreadInstances;
+
+    ScratchPool(Supplier<T> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    ScratchPool(Supplier<T> factory, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The pool needs to hold at least one instance.");
+        }
+        this.factory = factory;
+        this.platformThreadInstances = ThreadLocal.withInitial(factory);
+        this.virtualThreadInstances = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Returns an instance for exclusive use by the current thread, until it is handed back via
+     * {@link #release(Object)}.
+     */
+    T acquire() {
+        if (!Thread.currentThread().isVirtual()) {
+            return platformThreadInstances.get();
+        }
+        T instance = virtualThreadInstances.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    /**
+     * Hand back an instance retrieved through {@link #acquire()} on the same thread.
+     */
+    void release(T instance) {
+        if (Thread.currentThread().isVirtual()) {
+            virtualThreadInstances.offer(instance);
+        }
+    }
+}
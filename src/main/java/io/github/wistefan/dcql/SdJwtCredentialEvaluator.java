@@ -1,19 +1,17 @@
 package io.github.wistefan.dcql;
 
 import io.github.wistefan.dcql.model.*;
-import io.github.wistefan.dcql.model.credential.Disclosure;
 import io.github.wistefan.dcql.model.credential.SdJwtCredential;
 
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static io.github.wistefan.dcql.DCQLEvaluator.*;
 
 /**
  * Evaluator implementation for SD-JWT Credentials
  */
 public abstract class SdJwtCredentialEvaluator implements CredentialEvaluator<SdJwtCredential> {
 
+    private final StagePlanner stagePlanner = new StagePlanner();
+
     @Override
     public List<SdJwtCredential> translate(List<Credential> credentials) {
         return CredentialMapper.toSdJWTCredentials(credentials);
@@ -21,71 +19,82 @@ public abstract class SdJwtCredentialEvaluator implements CredentialEvaluator<Sd
 
     @Override
     public List<Credential> evaluate(CredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
-        if (containsMeta(credentialQuery)) {
-            sdJwtCredentials = filterSdJwtByMetadata(credentialQuery.getMeta(), sdJwtCredentials);
+        return evaluate(DcqlCompiler.compile(credentialQuery, this), sdJwtCredentials);
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
+        return selectDisclosures(credentialQuery, stagePlanner.filter(stages(credentialQuery, true, true), sdJwtCredentials));
+    }
+
+    // claim_sets select the first set fulfilled by any of the credentials, everything else is decided per credential
+    @Override
+    public boolean evaluatesIndependently(CompiledCredentialQuery credentialQuery) {
+        return !credentialQuery.containsClaimSets();
+    }
+
+    @Override
+    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+        // the metadata(and aki, if indexed) is already applied through the indexes of the wallet, the remaining trusted
+        // authorities narrow the candidates in place
+        BitSet candidates = wallet.candidates(credentialQuery);
+        boolean applyAki = !wallet.resolvesAuthorityKeyIdentifiers(credentialQuery.getFormat());
+        stagePlanner.filter(stages(credentialQuery, false, applyAki), candidates, position -> (SdJwtCredential) wallet.getRawCredential(position));
+        return selectDisclosures(credentialQuery, translate(wallet.materialize(candidates)));
+    }
+
+    // claims select disclosures instead of filtering, thus only meta and trusted authorities are planned
+    private List<StagePlanner.Stage<SdJwtCredential>> stages(CompiledCredentialQuery credentialQuery, boolean applyMeta, boolean applyAki) {
+        List<StagePlanner.Stage<SdJwtCredential>> stages = new ArrayList<>();
+        if (applyMeta && credentialQuery.containsMeta()) {
+            JwtMetaData jwtMetaData = credentialQuery.getJwtMetaData();
+            stages.add(StagePlanner.metaStage(jwtMetaData.getVctValues(), credential -> jwtMetaData.getVctValues().contains(credential.getVct())));
         }
-        if (containsTrustAuthorities(credentialQuery)) {
-            for (TrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
-                sdJwtCredentials = sdJwtCredentials.stream()
-                        .filter(credential -> TrustedAuthoritiesEvaluator.evaluateQueryForSDJwtCredential(taq, credential))
-                        .toList();
+        for (CompiledTrustedAuthorityQuery taq : credentialQuery.getTrustedAuthorities()) {
+            if (!applyAki && taq.getType() == TrustedAuthorityType.AKI) {
+                continue;
             }
+            stages.add(StagePlanner.trustedAuthorityStage(taq,
+                    credential -> TrustedAuthoritiesEvaluator.evaluateQueryForSDJwtCredential(taq, credential)));
         }
-        if (containsClaims(credentialQuery) && !containsClaimSets(credentialQuery)) {
+        return stages;
+    }
+
+    private static List<Credential> selectDisclosures(CompiledCredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
+        if (credentialQuery.containsClaims() && !credentialQuery.containsClaimSets()) {
             sdJwtCredentials = evaluateSdJwtCredentialsQuery(credentialQuery, sdJwtCredentials);
-        } else if (containsClaims(credentialQuery)) {
+        } else if (credentialQuery.containsClaims()) {
             return evaluateSdJwtForClaimSet(credentialQuery, sdJwtCredentials);
         } else {
             sdJwtCredentials = sdJwtCredentials.stream()
                     // keep the original credential untouched
-                    .map(sdJwtCredential -> new SdJwtCredential(sdJwtCredential.getRaw(), sdJwtCredential.getJwtCredential(), List.of()))
+                    .map(sdJwtCredential -> sdJwtCredential.withDisclosures(List.of()))
                     .toList();
         }
         return CredentialMapper.toCredentials(credentialQuery.getFormat(), sdJwtCredentials);
     }
 
-    private static List<SdJwtCredential> filterSdJwtByMetadata(Map<String, Object> metaData, List<SdJwtCredential> credentialsList) {
-        JwtMetaData jwtMetaData = JwtMetaData.fromMeta(metaData);
-        return credentialsList.stream()
-                .filter(sdJwtCredential -> jwtMetaData.getVctValues().contains(sdJwtCredential.getVct()))
-                .toList();
-    }
-
-    private static List<SdJwtCredential> evaluateSdJwtCredentialsQuery(CredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
+    private static List<SdJwtCredential> evaluateSdJwtCredentialsQuery(CompiledCredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
         List<SdJwtCredential> disclosedCredentials = new ArrayList<>();
+        BitSet selectedDisclosures = new BitSet();
         for (SdJwtCredential credential : sdJwtCredentials) {
-            Set<Disclosure> selectedDisclosures = credentialQuery.getClaims()
-                    .stream()
-                    .map(cq -> ClaimsEvaluator.evaluateClaimsForSdJwtCredential(cq, credential))
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .map(SdJwtCredential::getDisclosures)
-                    .flatMap(List::stream)
-                    .collect(Collectors.toSet());
-            disclosedCredentials.add(new SdJwtCredential(credential.getRaw(), credential.getJwtCredential(), new ArrayList<>(selectedDisclosures)));
+            selectedDisclosures.clear();
+            ClaimsEvaluator.selectDisclosures(credentialQuery.getClaimsTrie(), credential, selectedDisclosures);
+            disclosedCredentials.add(credential.withDisclosures(selectedDisclosures));
         }
         return disclosedCredentials;
     }
 
 
-    private static List<Credential> evaluateSdJwtForClaimSet(CredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
-        Map<String, ClaimsQuery> claimsQueryMap = new HashMap<>();
-        credentialQuery.getClaims()
-                .forEach(cq -> claimsQueryMap.put(cq.getId(), cq));
-
-        for (List<String> claimSet : credentialQuery.getClaimSets()) {
+    private static List<Credential> evaluateSdJwtForClaimSet(CompiledCredentialQuery credentialQuery, List<SdJwtCredential> sdJwtCredentials) {
+        BitSet selectedDisclosures = new BitSet();
+        for (ClaimPathTrie claimSetTrie : credentialQuery.getClaimSetTries()) {
             List<SdJwtCredential> disclosedCredentials = new ArrayList<>();
             for (SdJwtCredential credential : sdJwtCredentials) {
-                Set<Disclosure> disclosures = new HashSet<>();
-                for (String claimId : claimSet) {
-                    ClaimsQuery claimsQuery = claimsQueryMap.get(claimId);
-                    disclosures.addAll(new HashSet<>(
-                            ClaimsEvaluator.evaluateClaimsForSdJwtCredential(claimsQuery, credential)
-                                    .map(SdJwtCredential::getDisclosures)
-                                    .orElse(new ArrayList<>())));
-                }
-                if (!disclosures.isEmpty()) {
-                    disclosedCredentials.add(new SdJwtCredential(credential.getRaw(), credential.getJwtCredential(), new ArrayList<>(disclosures)));
+                selectedDisclosures.clear();
+                ClaimsEvaluator.selectDisclosures(claimSetTrie, credential, selectedDisclosures);
+                if (!selectedDisclosures.isEmpty()) {
+                    disclosedCredentials.add(credential.withDisclosures(selectedDisclosures));
                 }
             }
 
@@ -95,5 +104,4 @@ public abstract class SdJwtCredentialEvaluator implements CredentialEvaluator<Sd
         }
         return List.of();
     }
-
 }
@@ -0,0 +1,253 @@
+package io.github.wistefan.dcql;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Orders the filter stages(meta, trusted authorities and claims) of a credential query. All stages only remove
+ * credentials, thus their order does not change the result. The planner records how many credentials each stage rejects
+ * and how long it takes per credential, so that cheap stages with a high rejection rate run first and expensive stages
+ * only see the remaining candidates. Stages are told apart by their compiled values, e.g. the requested doctype or the
+ * paths of all claims, evaluated together in one traversal. Until enough samples are recorded, static estimates are
+ * used. Older samples lose weight over time, so that the order follows changes of the evaluated credentials.
+ * <p>
+ * A planner is meant to be held by an evaluator and is safe to be used concurrently.
+ */
+public class StagePlanner {
+
+    // number of evaluated credentials, before the recorded statistics replace the estimates
+    private static final long MIN_SAMPLES = 64;
+    // number of evaluated credentials, after which the recorded statistics of a stage are halved
+    private static final long DECAY_SAMPLES = 64 * 1024;
+    // limits the memory used for statistics, stages that are not yet tracked fall back to the estimates
+    private static final int MAX_TRACKED_STAGES = 1024;
+    // rough translation of the relative cost estimates into nanoseconds per credential
+    private static final double NANOS_PER_COST_UNIT = 50;
+    // prevents division by zero for stages that never reject anything
+    private static final double MIN_REJECTION_RATE = 0.01;
+    // number of candidates evaluated between two checks for interruption
+    private static final int INTERRUPTION_CHECK_INTERVAL = 256;
+
+    // estimated relative costs and rejection rates, used before statistics are available
+    private static final double META_COST = 1;
+    private static final double META_REJECTION_RATE = 0.9;
+    private static final double TRUSTED_AUTHORITY_COST = 20;
+    private static final double TRUSTED_AUTHORITY_REJECTION_RATE = 0.5;
+    private static final double CLAIM_STEP_COST = 2;
+    private static final double CLAIM_REJECTION_RATE = 0.3;
+    private static final double CLAIM_VALUES_REJECTION_RATE = 0.7;
+
+    private final ConcurrentMap<StageKey, StageStatistics> statistics = new ConcurrentHashMap<>();
+    private final long decaySamples;
+
+    public StagePlanner() {
+        this(DECAY_SAMPLES);
+    }
+
+    StagePlanner(long decaySamples) {
+        if (decaySamples < MIN_SAMPLES) {
+            throw new IllegalArgumentException("The statistics have to keep at least the minimum number of samples.");
+        }
+        this.decaySamples = decaySamples;
+    }
+
+    /**
+     * Stage filtering by the metadata of the query. Statistics are recorded per requested value(doctype, vct or type
+     * values), since they reject very different shares of the credentials.
+     */
+    public static <T> Stage<T> metaStage(Object metaValues, Predicate<T> predicate) {
+        return new Stage<>(new StageKey(StageKind.META, metaValues), META_COST, META_REJECTION_RATE, predicate);
+    }
+
+    /**
+     * Stage filtering by a trusted authority. Statistics are recorded per type and set of values.
+     */
+    public static <T> Stage<T> trustedAuthorityStage(CompiledTrustedAuthorityQuery trustedAuthorityQuery, Predicate<T> predicate) {
+        return new Stage<>(new StageKey(StageKind.TRUSTED_AUTHORITY,
+                List.of(trustedAuthorityQuery.getType(), Set.copyOf(trustedAuthorityQuery.getValues()))),
+                TRUSTED_AUTHORITY_COST, TRUSTED_AUTHORITY_REJECTION_RATE, predicate);
+    }
+
+    /**
+     * Stage filtering by all claims of a trie, evaluated in a single traversal. Statistics are recorded per set of
+     * claim paths.
+     */
+    public static <T> Stage<T> claimsStage(ClaimPathTrie claimPathTrie, Predicate<T> predicate) {
+        List<List<Object>> paths = claimPathTrie.getClaims()
+                .stream()
+                .map(claimsQuery -> claimsQuery.getPath().getComponents())
+                .toList();
+        return new Stage<>(new StageKey(StageKind.CLAIM, paths),
+                CLAIM_STEP_COST * claimPathTrie.size(),
+                claimPathTrie.containsValues() ? CLAIM_VALUES_REJECTION_RATE : CLAIM_REJECTION_RATE,
+                predicate);
+    }
+
+    /**
+     * Apply all stages to the candidates, in the planned order. Stops as soon as no candidate is left.
+     */
+    public <T> List<T> filter(List<Stage<T>> stages, List<T> candidates) {
+        for (Stage<T> stage : plan(stages)) {
+            if (candidates.isEmpty()) {
+                return candidates;
+            }
+            long start = System.nanoTime();
+            List<T> passed = new ArrayList<>(candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                if (i % INTERRUPTION_CHECK_INTERVAL == 0) {
+                    checkInterrupted();
+                }
+                T candidate = candidates.get(i);
+                if (stage.predicate().test(candidate)) {
+                    passed.add(candidate);
+                }
+            }
+            record(stage.key(), candidates.size(), candidates.size() - passed.size(), System.nanoTime() - start);
+            candidates = passed;
+        }
+        return candidates;
+    }
+
+    /**
+     * Apply all stages to the candidate positions, in the planned order. Rejected candidates are removed from the given
+     * set in place, no intermediate collections are created.
+     */
+    public <T> BitSet filter(List<Stage<T>> stages, BitSet candidates, IntFunction<T> candidateAt) {
+        for (Stage<T> stage : plan(stages)) {
+            if (candidates.isEmpty()) {
+                return candidates;
+            }
+            long start = System.nanoTime();
+            int evaluated = 0;
+            int rejected = 0;
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (evaluated % INTERRUPTION_CHECK_INTERVAL == 0) {
+                    checkInterrupted();
+                }
+                evaluated++;
+                if (!stage.predicate().test(candidateAt.apply(i))) {
+                    candidates.clear(i);
+                    rejected++;
+                }
+            }
+            record(stage.key(), evaluated, rejected, System.nanoTime() - start);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the candidates left by the first of the alternatives that does not reject all of them, empty if there is
+     * none.
+     */
+    public <T> List<T> filterFirst(List<List<Stage<T>>> alternatives, List<T> candidates) {
+        for (List<Stage<T>> alternative : alternatives) {
+            List<T> remaining = filter(alternative, candidates);
+            if (!remaining.isEmpty()) {
+                return remaining;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Returns the candidates left by the first of the alternatives that does not reject all of them, empty if there is
+     * none. The given candidates are not modified.
+     */
+    public <T> BitSet filterFirst(List<List<Stage<T>>> alternatives, BitSet candidates, IntFunction<T> candidateAt) {
+        for (List<Stage<T>> alternative : alternatives) {
+            BitSet remaining = filter(alternative, (BitSet) candidates.clone(), candidateAt);
+            if (!remaining.isEmpty()) {
+                return remaining;
+            }
+        }
+        return new BitSet();
+    }
+
+    // evaluations that are not needed anymore are interrupted(e.g. by evaluateStructured), instead of being finished
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new EvaluationException("Interrupted while evaluating the credentials.");
+        }
+    }
+
+    /**
+     * Returns the stages in the order they should be evaluated, lowest expected cost per rejected credential first.
+     * Stages with the same rank keep their original order.
+     */
+    <T> List<Stage<T>> plan(List<Stage<T>> stages) {
+        if (stages.size() < 2) {
+            return stages;
+        }
+        List<Stage<T>> planned = new ArrayList<>(stages);
+        planned.sort(Comparator.comparingDouble(this::rank));
+        return planned;
+    }
+
+    private double rank(Stage<?> stage) {
+        double nanosPerCandidate = stage.estimatedCost() * NANOS_PER_COST_UNIT;
+        double rejectionRate = stage.estimatedRejectionRate();
+        StageStatistics stageStatistics = statistics.get(stage.key());
+        if (stageStatistics != null) {
+            long evaluated = stageStatistics.evaluated.sum();
+            if (evaluated >= MIN_SAMPLES) {
+                nanosPerCandidate = (double) stageStatistics.nanos.sum() / evaluated;
+                rejectionRate = (double) stageStatistics.rejected.sum() / evaluated;
+            }
+        }
+        return nanosPerCandidate / Math.max(rejectionRate, MIN_REJECTION_RATE);
+    }
+
+    private void record(StageKey key, long evaluated, long rejected, long nanos) {
+        StageStatistics stageStatistics = statistics.get(key);
+        if (stageStatistics == null) {
+            if (statistics.size() >= MAX_TRACKED_STAGES) {
+                return;
+            }
+            stageStatistics = statistics.computeIfAbsent(key, k -> new StageStatistics());
+        }
+        stageStatistics.evaluated.add(evaluated);
+        stageStatistics.rejected.add(rejected);
+        stageStatistics.nanos.add(nanos);
+        if (stageStatistics.evaluated.sum() >= decaySamples) {
+            // samples recorded concurrently to the replacement are lost, which is fine for an estimate
+            statistics.replace(key, stageStatistics, stageStatistics.halved());
+        }
+    }
+
+    /**
+     * A filter stage.
+     */
+    public record Stage<T>(StageKey key, double estimatedCost, double estimatedRejectionRate, Predicate<T> predicate) {
+    }
+
+    /**
+     * Identifies stages that share statistics, e.g. the claims stages of all queries requesting the same paths.
+     */
+    public record StageKey(StageKind kind, Object detail) {
+    }
+
+    public enum StageKind {
+        META,
+        TRUSTED_AUTHORITY,
+        CLAIM
+    }
+
+    private static final class StageStatistics {
+        private final LongAdder evaluated = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        // statistics with half the weight, keeping the rates
+        private StageStatistics halved() {
+            StageStatistics halved = new StageStatistics();
+            halved.evaluated.add(evaluated.sum() / 2);
+            halved.rejected.add(rejected.sum() / 2);
+            halved.nanos.add(nanos.sum() / 2);
+            return halved;
+        }
+    }
+}
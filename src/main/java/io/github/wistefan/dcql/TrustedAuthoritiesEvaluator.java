@@ -1,6 +1,7 @@
 package io.github.wistefan.dcql;
 
 import io.github.wistefan.dcql.model.TrustedAuthorityQuery;
+import io.github.wistefan.dcql.model.TrustedAuthorityType;
 import io.github.wistefan.dcql.model.credential.JwtCredential;
 import io.github.wistefan.dcql.model.credential.MDocCredential;
 import io.github.wistefan.dcql.model.credential.SdJwtCredential;
@@ -11,18 +12,29 @@ import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 
 import java.io.IOException;
 import java.security.cert.X509Certificate;
-import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Slf4j
 public class TrustedAuthoritiesEvaluator {
 
 	private static final String AKI_EXTENSION = "2.5.29.35";
+	private static final String OPENID_FEDERATION_UNSUPPORTED = "Querying for OpenId Federation Trust Authorities is not yet supported.";
+	private static final String ETSI_TL_UNSUPPORTED = "Querying for etsi-tl is not supported at the moment.";
+	// certificates are usually shared by many credentials, thus their aki is only extracted once
+	private static final int AKI_CACHE_SIZE = 4096;
+	private static final AuthorityKeyIdentifierCache AKI_CACHE = new AuthorityKeyIdentifierCache(AKI_CACHE_SIZE,
+			certificate -> getAuthorityKeyIdentifier(certificate).map(KeyIdentifier::of));
 
 	public static boolean evaluateQueryForMDocCredential(TrustedAuthorityQuery query, MDocCredential credential) {
+		return evaluateQueryForMDocCredential(DcqlCompiler.compile(query), credential);
+	}
+
+	public static boolean evaluateQueryForMDocCredential(CompiledTrustedAuthorityQuery query, MDocCredential credential) {
 		return switch (query.getType()) {
-			case AKI -> isInChain(credential.getHeaders().getX5Chain(), query.getValues());
+			case AKI -> isInChain(credential.getHeaders().getX5Chain(), query.getAuthorityKeyIdentifiers());
 			case ETSI_TL -> isInEtsiTl(credential.getHeaders().getX5Chain(), query.getValues());
 			case OPENID_FEDERATION -> isInOpenIdFederation(query.getValues());
 		};
@@ -32,40 +44,89 @@ public class TrustedAuthoritiesEvaluator {
 		return evaluateQueryForJwtCredential(query, credential.getJwtCredential());
 	}
 
+	public static boolean evaluateQueryForSDJwtCredential(CompiledTrustedAuthorityQuery query, SdJwtCredential credential) {
+		return evaluateQueryForJwtCredential(query, credential.getJwtCredential());
+	}
+
 	public static boolean evaluateQueryForJwtCredential(TrustedAuthorityQuery query, JwtCredential credential) {
+		return evaluateQueryForJwtCredential(DcqlCompiler.compile(query), credential);
+	}
+
+	public static boolean evaluateQueryForJwtCredential(CompiledTrustedAuthorityQuery query, JwtCredential credential) {
 		return switch (query.getType()) {
-			case AKI -> isInChain(credential.getX5Chain(), query.getValues());
+			case AKI -> isInChain(credential.getX5Chain(), query.getAuthorityKeyIdentifiers());
 			case ETSI_TL -> isInEtsiTl(credential.getX5Chain(), query.getValues());
 			case OPENID_FEDERATION -> isInOpenIdFederation(query.getValues());
 		};
 	}
 
 
+	/**
+	 * Throws an {@link UnsupportedOperationException} if trusted authorities of the given type cannot be evaluated.
+	 * Checked when compiling a credential query, so that it fails independent of the credentials it is evaluated on.
+	 */
+	static void checkSupported(TrustedAuthorityType type) {
+		switch (type) {
+			case AKI -> {
+				// supported
+			}
+			case ETSI_TL -> throw new UnsupportedOperationException(ETSI_TL_UNSUPPORTED);
+			case OPENID_FEDERATION -> throw new UnsupportedOperationException(OPENID_FEDERATION_UNSUPPORTED);
+		}
+	}
+
 	// ---- OpenID Federation ----
 	private static boolean isInOpenIdFederation(List<String> federationValues) {
-		throw new UnsupportedOperationException("Querying for OpenId Federation Trust Authorities is not yet supported.");
+		throw new UnsupportedOperationException(OPENID_FEDERATION_UNSUPPORTED);
 	}
 
 	// ---- ETSI TL ----
 	private static boolean isInEtsiTl(List<X509Certificate> x5chain, List<String> etsiTls) {
-		throw new UnsupportedOperationException("Querying for etsi-tl is not supported at the moment.");
+		throw new UnsupportedOperationException(ETSI_TL_UNSUPPORTED);
 	}
 
 	// ---- AKI ----
 
-	private static boolean isInChain(List<X509Certificate> x5chain, List<String> akiValues) {
-		return x5chain.stream()
-				.map(TrustedAuthoritiesEvaluator::getAuthorityKeyIdentifier)
-				.filter(Optional::isPresent)
-				.map(Optional::get)
-				.map(byteArray -> Base64.getUrlEncoder().encodeToString(byteArray))
-				.anyMatch(akiValues::contains);
+	private static boolean isInChain(List<X509Certificate> x5chain, Set<KeyIdentifier> akiValues) {
+		if (akiValues.isEmpty()) {
+			return false;
+		}
+		for (X509Certificate certificate : x5chain) {
+			Optional<KeyIdentifier> aki = authorityKeyIdentifier(certificate);
+			if (aki.isPresent() && akiValues.contains(aki.get())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-	private static List<byte[]> decodeAki(List<String> akiValues) {
-		return akiValues.stream()
-				.map(v -> Base64.getUrlDecoder().decode(v))
-				.toList();
+	/**
+	 * Returns the aki of the certificate, through the shared cache.
+	 */
+	static Optional<KeyIdentifier> authorityKeyIdentifier(X509Certificate certificate) {
+		return AKI_CACHE.get(certificate);
+	}
+
+	/**
+	 * Decode the base64url encoded aki values of a query. Values are matched exactly against the padded encoding of
+	 * the certificates aki, thus values with another encoding(e.g. without padding) or invalid base64url cannot match
+	 * any certificate and are left out.
+	 */
+	static Set<KeyIdentifier> decodeAki(List<String> akiValues) {
+		Set<KeyIdentifier> keyIdentifiers = new HashSet<>();
+		for (String akiValue : akiValues) {
+			try {
+				KeyIdentifier keyIdentifier = KeyIdentifier.fromBase64Url(akiValue);
+				if (keyIdentifier.toBase64Url().equals(akiValue)) {
+					keyIdentifiers.add(keyIdentifier);
+				} else {
+					log.debug("The aki value {} is not the padded base64url encoding of an identifier.", akiValue);
+				}
+			} catch (IllegalArgumentException e) {
+				log.debug("The aki value {} is not valid base64url.", akiValue, e);
+			}
+		}
+		return Set.copyOf(keyIdentifiers);
 	}
 
 	public static Optional<byte[]> getAuthorityKeyIdentifier(X509Certificate certificate) {
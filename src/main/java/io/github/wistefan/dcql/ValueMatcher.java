@@ -0,0 +1,237 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matcher for the expected values of a {@link ClaimsQuery}. The values are normalized once into typed hash sets, so
+ * that checking a claim is a constant time lookup. Numbers are compared by their value, independent of the java type
+ * used to represent them, e.g. {@link Integer} 1 matches {@link Long} 1.
+ */
+public final class ValueMatcher {
+
+    /**
+     * Matcher accepting every value, used if the query does not contain values.
+     */
+    public static final ValueMatcher ANY = new ValueMatcher();
+
+    private final boolean matchesAny;
+    private final Set<String> strings = new HashSet<>();
+    private final LongHashSet longs = new LongHashSet();
+    // doubles that do not represent an integral value, stored by their bits
+    private final LongHashSet doubleBits = new LongHashSet();
+    private boolean allowTrue;
+    private boolean allowFalse;
+    private boolean allowNull;
+    // values of any other type, compared via equals
+    private final Set<Object> others = new HashSet<>();
+
+    private ValueMatcher() {
+        this.matchesAny = true;
+    }
+
+    private ValueMatcher(List<Object> values) {
+        this.matchesAny = false;
+        for (Object value : values) {
+            if (value == null) {
+                allowNull = true;
+            } else if (value instanceof String stringValue) {
+                strings.add(stringValue);
+            } else if (value instanceof Boolean booleanValue) {
+                if (booleanValue) {
+                    allowTrue = true;
+                } else {
+                    allowFalse = true;
+                }
+            } else if (value instanceof Number number) {
+                addNumber(number);
+            } else {
+                others.add(value);
+            }
+        }
+    }
+
+    /**
+     * Create a matcher for the given values. If null or empty, every value is accepted.
+     */
+    public static ValueMatcher of(List<Object> values) {
+        if (values == null || values.isEmpty()) {
+            return ANY;
+        }
+        return new ValueMatcher(values);
+    }
+
+    /**
+     * Returns true if the matcher accepts all values.
+     */
+    public boolean matchesAny() {
+        return matchesAny;
+    }
+
+    /**
+     * Check if the given claim value is one of the expected values. Does not allocate for strings, booleans and
+     * numbers.
+     */
+    public boolean matches(Object value) {
+        if (matchesAny) {
+            return true;
+        }
+        if (value == null) {
+            return allowNull;
+        }
+        if (value instanceof String stringValue) {
+            return strings.contains(stringValue);
+        }
+        if (value instanceof Boolean booleanValue) {
+            return booleanValue ? allowTrue : allowFalse;
+        }
+        if (isIntegral(value)) {
+            return longs.contains(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double doubleValue = ((Number) value).doubleValue();
+            if (isIntegralDouble(doubleValue)) {
+                return longs.contains((long) doubleValue);
+            }
+            return doubleBits.contains(Double.doubleToLongBits(doubleValue));
+        }
+        if (value instanceof BigInteger || value instanceof BigDecimal) {
+            Object normalized = normalizeBigNumber((Number) value);
+            return normalized != null ? matches(normalized) : others.contains(value);
+        }
+        return others.contains(value);
+    }
+
+    /**
+     * Translate the value into a canonical representation, that is equal for all values matched by the same expected
+     * value. Numbers become {@link Long} if integral, {@link Double} otherwise.
+     */
+    static Object normalize(Object value) {
+        if (isIntegral(value)) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double doubleValue = ((Number) value).doubleValue();
+            return isIntegralDouble(doubleValue) ? (Object) (long) doubleValue : (Object) doubleValue;
+        }
+        if (value instanceof BigInteger || value instanceof BigDecimal) {
+            Number normalized = normalizeBigNumber((Number) value);
+            return normalized == null ? value : normalize(normalized);
+        }
+        return value;
+    }
+
+    private void addNumber(Number number) {
+        if (isIntegral(number)) {
+            longs.add(number.longValue());
+        } else if (number instanceof Double || number instanceof Float) {
+            double doubleValue = number.doubleValue();
+            if (isIntegralDouble(doubleValue)) {
+                longs.add((long) doubleValue);
+            } else {
+                doubleBits.add(Double.doubleToLongBits(doubleValue));
+            }
+        } else if (number instanceof BigInteger || number instanceof BigDecimal) {
+            Object normalized = normalizeBigNumber(number);
+            if (normalized instanceof Number normalizedNumber) {
+                addNumber(normalizedNumber);
+            } else {
+                others.add(number);
+            }
+        } else {
+            others.add(number);
+        }
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private static boolean isIntegralDouble(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value)
+                && value >= Long.MIN_VALUE && value <= Long.MAX_VALUE;
+    }
+
+    // translate big numbers into long or double, if that is possible without losing precision. Null otherwise.
+    private static Number normalizeBigNumber(Number number) {
+        try {
+            if (number instanceof BigInteger bigInteger) {
+                return bigInteger.longValueExact();
+            }
+            BigDecimal bigDecimal = ((BigDecimal) number).stripTrailingZeros();
+            if (bigDecimal.scale() <= 0) {
+                return bigDecimal.longValueExact();
+            }
+            double doubleValue = bigDecimal.doubleValue();
+            if (new BigDecimal(Double.toString(doubleValue)).compareTo(bigDecimal) == 0) {
+                return doubleValue;
+            }
+        } catch (ArithmeticException e) {
+            // does not fit into a long
+        }
+        return null;
+    }
+
+    /**
+     * Minimal open-addressing set of primitive longs, to check numbers without boxing.
+     */
+    private static final class LongHashSet {
+
+        private long[] table = new long[8];
+        private boolean[] used = new boolean[8];
+        private int size;
+
+        void add(long value) {
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int slot = slot(value, table.length);
+            while (used[slot]) {
+                if (table[slot] == value) {
+                    return;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = value;
+            used[slot] = true;
+            size++;
+        }
+
+        boolean contains(long value) {
+            if (size == 0) {
+                return false;
+            }
+            int slot = slot(value, table.length);
+            while (used[slot]) {
+                if (table[slot] == value) {
+                    return true;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] oldTable = table;
+            boolean[] oldUsed = used;
+            table = new long[oldTable.length * 2];
+            used = new boolean[oldTable.length * 2];
+            size = 0;
+            for (int i = 0; i < oldTable.length; i++) {
+                if (oldUsed[i]) {
+                    add(oldTable[i]);
+                }
+            }
+        }
+
+        private static int slot(long value, int length) {
+            long hash = value * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & (length - 1);
+        }
+    }
+}
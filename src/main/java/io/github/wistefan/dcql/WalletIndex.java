@@ -0,0 +1,21 @@
+package io.github.wistefan.dcql;
+
+/**
+ * Optional indexes of a {@link CredentialWallet}. They speed up specific kinds of queries, at the cost of memory and
+ * time when adding credentials.
+ */
+public enum WalletIndex {
+
+    /**
+     * Index of all scalar claim values of mdoc, jwt_vc_json and ldp_vc credentials by their concrete path, up to a
+     * depth of 32. Claims queries with scalar values and without wildcards are resolved through lookups. If all claims
+     * of a credential query are resolved, the candidates are not traversed at all.
+     */
+    CLAIM_VALUES,
+
+    /**
+     * Index of the authority key identifiers in the x5c chains of mdoc, jwt_vc_json and SD-JWT credentials. Trusted
+     * authorities of type aki are resolved through lookups, instead of checking the certificates of every candidate.
+     */
+    AUTHORITY_KEY_IDENTIFIERS
+}
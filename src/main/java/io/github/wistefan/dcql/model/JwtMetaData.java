@@ -29,7 +29,7 @@ public class JwtMetaData {
             if (vctValues.size() != vctStrings.size()) {
                 throw new IllegalArgumentException(String.format("The vct_values %s contain invalid values.", vctValues));
             }
-            return new JwtMetaData(new HashSet<>(vctStrings));
+            return new JwtMetaData(Set.copyOf(vctStrings));
         }
         throw new IllegalArgumentException(String.format("Given metaData %s is not sdJwt-metadata.", metaData));
     }
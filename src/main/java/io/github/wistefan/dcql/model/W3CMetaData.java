@@ -32,7 +32,8 @@ public class W3CMetaData {
 			if (typeValuesStrings.size() != typeValues.size()) {
 				throw new IllegalArgumentException(String.format("The type_values %s contain invalid values.", typeValues));
 			}
-			return new W3CMetaData(typeValues);
+			// the validated copy, to not be affected by later changes of the query
+			return new W3CMetaData(typeValuesStrings);
 		}
 		throw new IllegalArgumentException(String.format("Given metaData %s is not w3c-metadata.", metaData));
 	}
@@ -0,0 +1,138 @@
+package io.github.wistefan.dcql.model.credential;
+
+import io.github.wistefan.dcql.EvaluationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Calculates the sd hashes of {@link Disclosure}s. Message digests are reused per thread(pooled for virtual threads),
+ * instead of being looked up for every disclosure. Supports the hash algorithms of the IANA "Named Information Hash
+ * Algorithm" registry that are commonly used as _sd_alg: sha-256, sha-384 and sha-512.
+ */
+public final class DisclosureHasher {
+
+    // below this number of disclosures, hashing in parallel does not pay off
+    private static final int MIN_PARALLEL_DISCLOSURES = 256;
+    // hashing does not block, thus usually not more virtual threads than carriers hold a digest at a time
+    private static final int VIRTUAL_THREAD_DIGESTS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private DisclosureHasher() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns true if the given _sd_alg is supported.
+     */
+    public static boolean isSupported(String sdAlgorithm) {
+        return SdAlgorithm.fromValue(sdAlgorithm) != null;
+    }
+
+    /**
+     * Returns the base64url encoded hash of the encoded disclosure. Fails with an {@link EvaluationException} if the
+     * algorithm is not supported.
+     */
+    public static String hash(String encodedDisclosure, String sdAlgorithm) {
+        SdAlgorithm algorithm = SdAlgorithm.fromValue(sdAlgorithm);
+        if (algorithm == null) {
+            throw new EvaluationException(String.format("SD-Algorithm %s is not supported.", sdAlgorithm));
+        }
+        MessageDigest digest = algorithm.acquire();
+        byte[] hash;
+        try {
+            // digest() resets the instance, thus it can directly be reused
+            hash = digest.digest(encodedDisclosure.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            algorithm.release(digest);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    /**
+     * Calculates the hashes of all disclosures of the given credentials, e.g. when importing a wallet. Large amounts of
+     * disclosures are hashed in parallel, on the common pool.
+     */
+    public static void hashAll(Collection<SdJwtCredential> credentials) {
+        List<Disclosure> disclosures = credentials.stream()
+                .map(SdJwtCredential::getDisclosures)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .toList();
+        if (disclosures.size() < MIN_PARALLEL_DISCLOSURES) {
+            disclosures.forEach(Disclosure::getSdHash);
+        } else {
+            disclosures.parallelStream().forEach(Disclosure::getSdHash);
+        }
+    }
+
+    /**
+     * Returns the canonical(lower case) name of the algorithm, null if it is not supported.
+     */
+    static String canonicalName(String sdAlgorithm) {
+        SdAlgorithm algorithm = SdAlgorithm.fromValue(sdAlgorithm);
+        return algorithm == null ? null : algorithm.value;
+    }
+
+    private enum SdAlgorithm {
+        SHA_256("sha-256", "SHA-256"),
+        SHA_384("sha-384", "SHA-384"),
+        SHA_512("sha-512", "SHA-512");
+
+        private final String value;
+        private final String jcaName;
+        // virtual threads are created per task, a thread local would create a new digest for every one of them
+        private final ThreadLocal<MessageDigest> platformThreadDigests;
+        private final BlockingQueue<MessageDigest> virtualThreadDigests =
+                new ArrayBlockingQueue<>(VIRTUAL_THREAD_DIGESTS);
+
+        SdAlgorithm(String value, String jcaName) {
+            this.value = value;
+            this.jcaName = jcaName;
+            this.platformThreadDigests = ThreadLocal.withInitial(this::newDigest);
+        }
+
+        // returns a digest for exclusive use by the current thread, until it is released on the same thread
+        private MessageDigest acquire() {
+            if (!Thread.currentThread().isVirtual()) {
+                return platformThreadDigests.get();
+            }
+            MessageDigest digest = virtualThreadDigests.poll();
+            return digest != null ? digest : newDigest();
+        }
+
+        private void release(MessageDigest digest) {
+            if (Thread.currentThread().isVirtual()) {
+                virtualThreadDigests.offer(digest);
+            }
+        }
+
+        private MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(jcaName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new EvaluationException(String.format("SD-Algorithm %s is not supported.", value), e);
+            }
+        }
+
+        private static SdAlgorithm fromValue(String value) {
+            if (value == null) {
+                return null;
+            }
+            String lowerCaseValue = value.toLowerCase(Locale.ROOT);
+            for (SdAlgorithm algorithm : values()) {
+                if (algorithm.value.equals(lowerCaseValue)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+}
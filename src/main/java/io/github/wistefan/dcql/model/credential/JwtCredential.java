@@ -1,13 +1,16 @@
 package io.github.wistefan.dcql.model.credential;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Holder of JwtCredentials, providing access to its deserialized contents.
+ * Holder of JwtCredentials, providing access to its deserialized contents. Derived views(payload, type, vct and x5c
+ * chain) are computed on first access and cached, later changes of the headers or payload are not reflected by them.
  */
 @Getter
 public class JwtCredential extends CredentialBase {
@@ -21,6 +24,19 @@ public class JwtCredential extends CredentialBase {
     private final Map<String, Object> payload;
     private final String signature;
 
+    // lazily derived views. Concurrent first accesses may derive them twice, with equal results. The resolved payload
+    // is the(mutable) "vc" entry itself, all other views are immutable
+    @Getter(AccessLevel.NONE)
+    private Map<String, Object> resolvedPayload;
+    @Getter(AccessLevel.NONE)
+    private List<String> types;
+    @Getter(AccessLevel.NONE)
+    private Set<String> typeSet;
+    @Getter(AccessLevel.NONE)
+    private String vct;
+    @Getter(AccessLevel.NONE)
+    private List<X509Certificate> x5Chain;
+
     public JwtCredential(String raw, Map<String, Object> headers, Map<String, Object> payload, String signature) {
         super(raw);
         this.headers = headers;
@@ -32,12 +48,21 @@ public class JwtCredential extends CredentialBase {
      * Returns the certificates from the "x5c" header from the credential, if the header exists
      */
     public List<X509Certificate> getX5Chain() {
-        if (headers.containsKey(X5C_KEY) && headers.get(X5C_KEY) instanceof List x5Chain) {
-            List<X509Certificate> x509Certificates = x5Chain.stream()
+        List<X509Certificate> chain = x5Chain;
+        if (chain == null) {
+            chain = resolveX5Chain();
+            x5Chain = chain;
+        }
+        return chain;
+    }
+
+    private List<X509Certificate> resolveX5Chain() {
+        if (headers.containsKey(X5C_KEY) && headers.get(X5C_KEY) instanceof List x5cHeader) {
+            List<X509Certificate> x509Certificates = x5cHeader.stream()
                     .filter(X509Certificate.class::isInstance)
                     .map(X509Certificate.class::cast)
                     .toList();
-            if (x5Chain.size() != x509Certificates.size()) {
+            if (x5cHeader.size() != x509Certificates.size()) {
                 throw new IllegalArgumentException("The x5c header contains invalid values.");
             }
             return x509Certificates;
@@ -50,16 +75,39 @@ public class JwtCredential extends CredentialBase {
      * Returns the concrete "vc" entry from the payload.
      */
     public Map<String, Object> getPayload() {
-        if (payload.containsKey(VC_PAYLOAD_KEY)) {
-            return (Map<String, Object>) payload.get(VC_PAYLOAD_KEY);
+        Map<String, Object> resolved = resolvedPayload;
+        if (resolved == null) {
+            resolved = payload.containsKey(VC_PAYLOAD_KEY) ? (Map<String, Object>) payload.get(VC_PAYLOAD_KEY) : payload;
+            resolvedPayload = resolved;
         }
-        return payload;
+        return resolved;
     }
 
     /**
      * Returns contents of the "type" field from the credential
      */
     public List<String> getType() {
+        List<String> typeList = types;
+        if (typeList == null) {
+            typeList = resolveType();
+            types = typeList;
+        }
+        return typeList;
+    }
+
+    /**
+     * Returns contents of the "type" field from the credential as a set, e.g. to check the type_values of a query.
+     */
+    public Set<String> getTypeSet() {
+        Set<String> typeValues = typeSet;
+        if (typeValues == null) {
+            typeValues = Set.copyOf(getType());
+            typeSet = typeValues;
+        }
+        return typeValues;
+    }
+
+    private List<String> resolveType() {
         if (getPayload().containsKey(TYPE_KEY)) {
             if (getPayload().get(TYPE_KEY) instanceof String typeString) {
                 return List.of(typeString);
@@ -80,7 +128,11 @@ public class JwtCredential extends CredentialBase {
      * Returns contents of the "vct" field of the credential.
      */
     public String getVct() {
+        if (vct != null) {
+            return vct;
+        }
         if (getPayload().containsKey(VCT_KEY) && getPayload().get(VCT_KEY) instanceof String vctValue) {
+            vct = vctValue;
             return vctValue;
         }
         throw new IllegalArgumentException("Invalid credential. Does not contain a valid vct.");
@@ -1,12 +1,15 @@
 package io.github.wistefan.dcql.model.credential;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Holder of LdpCredentials, providing access to its deserialized contents.
+ * Holder of LdpCredentials, providing access to its deserialized contents. The type is resolved on first access,
+ * later changes of the "type" field are not picked up.
  */
 @Getter
 public class LdpCredential extends CredentialBase {
@@ -15,6 +18,12 @@ public class LdpCredential extends CredentialBase {
 
     private final Map<String, Object> theCredential;
 
+    // immutable copies of the type field, concurrent first accesses can only create equal copies
+    @Getter(AccessLevel.NONE)
+    private List<String> types;
+    @Getter(AccessLevel.NONE)
+    private Set<String> typeSet;
+
     public LdpCredential(String raw, Map<String, Object> theCredential) {
         super(raw);
         this.theCredential = theCredential;
@@ -24,6 +33,27 @@ public class LdpCredential extends CredentialBase {
      * Returns contents of the "type" field from the credential
      */
     public List<String> getType() {
+        List<String> typeList = types;
+        if (typeList == null) {
+            typeList = resolveType();
+            types = typeList;
+        }
+        return typeList;
+    }
+
+    /**
+     * Returns contents of the "type" field from the credential as a set, e.g. to check the type_values of a query.
+     */
+    public Set<String> getTypeSet() {
+        Set<String> typeValues = typeSet;
+        if (typeValues == null) {
+            typeValues = Set.copyOf(getType());
+            typeSet = typeValues;
+        }
+        return typeValues;
+    }
+
+    private List<String> resolveType() {
         if (theCredential.containsKey(TYPE_KEY)) {
             if (theCredential.get(TYPE_KEY) instanceof String typeString) {
                 return List.of(typeString);
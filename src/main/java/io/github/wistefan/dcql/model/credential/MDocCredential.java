@@ -1,11 +1,12 @@
 package io.github.wistefan.dcql.model.credential;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.Map;
 
 /**
- * Holder of MDocCredentials, providing access to its deserialized contents.
+ * Holder of MDocCredentials, providing access to its deserialized contents. The docType is read once and cached.
  */
 @Getter
 public class MDocCredential extends CredentialBase {
@@ -15,6 +16,9 @@ public class MDocCredential extends CredentialBase {
     private MDocHeaders headers;
     private Map<String, Object> payload;
 
+    @Getter(AccessLevel.NONE)
+    private String docType;
+
     public MDocCredential(String raw, MDocHeaders headers, Map<String, Object> payload) {
         super(raw);
         this.headers = headers;
@@ -25,9 +29,13 @@ public class MDocCredential extends CredentialBase {
      * Returns contents of the "docType" field from the credential
      */
     public String getDocType() {
-        if (payload.containsKey(DOC_TYPE_KEY) && payload.get(DOC_TYPE_KEY) instanceof String docType) {
+        if (docType != null) {
             return docType;
         }
+        if (payload.containsKey(DOC_TYPE_KEY) && payload.get(DOC_TYPE_KEY) instanceof String docTypeValue) {
+            docType = docTypeValue;
+            return docTypeValue;
+        }
         throw new IllegalArgumentException("The credential does not contain a valid docType.");
     }
 }
@@ -0,0 +1,94 @@
+package io.github.wistefan.dcql.model.credential;
+
+import java.util.*;
+
+/**
+ * Read-only view of an array of an SD-JWT, with its array element digests({"...": "<hash>"}) replaced by the values of
+ * their disclosures. Digests without a disclosure are removed, as required for SD-JWT. The original array is not
+ * copied, the view is resolved once on creation.
+ */
+public final class RevealedArray extends AbstractList<Object> implements RandomAccess {
+
+    // key of array element digests inside the VC
+    private static final String ARRAY_ELEMENT_KEY = "...";
+
+    private final Object[] values;
+    // the disclosures revealing the elements, null for elements that are plain values of the original array
+    private final Disclosure[] disclosures;
+
+    private RevealedArray(Object[] values, Disclosure[] disclosures) {
+        this.values = values;
+        this.disclosures = disclosures;
+    }
+
+    /**
+     * Returns the view of the given array, null if it does not contain array element digests.
+     */
+    static RevealedArray of(List<?> original, Map<String, Disclosure> disclosuresByHash) {
+        int firstDigest = -1;
+        for (int i = 0; i < original.size(); i++) {
+            if (isDigest(original.get(i))) {
+                firstDigest = i;
+                break;
+            }
+        }
+        if (firstDigest < 0) {
+            return null;
+        }
+        Object[] values = new Object[original.size()];
+        Disclosure[] disclosures = new Disclosure[original.size()];
+        int size = 0;
+        for (int i = 0; i < original.size(); i++) {
+            Object element = original.get(i);
+            if (i < firstDigest || !isDigest(element)) {
+                values[size++] = element;
+                continue;
+            }
+            Disclosure disclosure = disclosuresByHash.get((String) ((Map<?, ?>) element).get(ARRAY_ELEMENT_KEY));
+            // only array element disclosures(without a claim name) can reveal elements, everything else is removed
+            if (disclosure != null && disclosure.getClaim() == null) {
+                values[size] = disclosure.getValue();
+                disclosures[size] = disclosure;
+                size++;
+            }
+        }
+        return new RevealedArray(Arrays.copyOf(values, size), Arrays.copyOf(disclosures, size));
+    }
+
+    private static boolean isDigest(Object element) {
+        return element instanceof Map<?, ?> map && map.size() == 1 && map.get(ARRAY_ELEMENT_KEY) instanceof String;
+    }
+
+    /**
+     * Returns the disclosure revealing the element at the given position, null if the element is a plain value of the
+     * original array.
+     */
+    public Disclosure getDisclosure(int index) {
+        Objects.checkIndex(index, disclosures.length);
+        return disclosures[index];
+    }
+
+    /**
+     * The disclosures revealing elements of the array, to continue the traversal into their values.
+     */
+    List<Disclosure> getRevealedDisclosures() {
+        List<Disclosure> revealed = new ArrayList<>();
+        for (Disclosure disclosure : disclosures) {
+            if (disclosure != null) {
+                revealed.add(disclosure);
+            }
+        }
+        return revealed;
+    }
+
+    @Override
+    public Object get(int index) {
+        Objects.checkIndex(index, values.length);
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.wistefan.dcql.model.credential;
+
+import java.util.*;
+
+/**
+ * Read-only view of an object of an SD-JWT, with the claims of its "_sd" entry revealed. Keys are resolved against the
+ * original object first, then against the disclosures. The original object is not copied.
+ */
+public final class RevealedObject extends AbstractMap<String, Object> {
+
+    // key for selective disclosure values inside the VC
+    private static final String SD_KEY = "_sd";
+
+    private final Map<?, ?> original;
+    // the disclosures revealed by the _sd entry, by their claim name
+    private final Map<String, Disclosure> revealed;
+    // merged entries, only built if the view is used as a complete map
+    private Set<Entry<String, Object>> entrySet;
+
+    private RevealedObject(Map<?, ?> original, Map<String, Disclosure> revealed) {
+        this.original = original;
+        this.revealed = revealed;
+    }
+
+    /**
+     * Returns the view of the given object, null if its "_sd" entry is not a list.
+     */
+    static RevealedObject of(Map<?, ?> original, Map<String, Disclosure> disclosuresByHash) {
+        if (!(original.get(SD_KEY) instanceof List<?> sdList)) {
+            return null;
+        }
+        Map<String, Disclosure> revealed = new LinkedHashMap<>();
+        for (Object hashObj : sdList) {
+            if (hashObj instanceof String hash) {
+                Disclosure disclosure = disclosuresByHash.get(hash);
+                // array element disclosures have no claim name and cannot reveal properties
+                if (disclosure != null && disclosure.getClaim() != null) {
+                    revealed.put(disclosure.getClaim(), disclosure);
+                }
+            }
+        }
+        return new RevealedObject(original, revealed);
+    }
+
+    /**
+     * Collects the views of all objects with an "_sd" entry and all arrays with element digests, that are reachable
+     * from the root. Arrays without digests are mapped to themselves. Revealed values are included, to support nested
+     * disclosures. The sd hash of the disclosure each revealed disclosure is nested in is put into the given parent
+     * hashes, so that a presentation can contain the complete chain of disclosures.
+     */
+    static Map<Object, Object> collect(Object root, Map<String, Disclosure> disclosuresByHash, Map<String, String> parentHashes) {
+        Map<Object, Object> revealedContainers = new IdentityHashMap<>();
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<PendingContainer> pending = new ArrayDeque<>();
+        pushContainer(pending, root, null);
+        while (!pending.isEmpty()) {
+            PendingContainer pendingContainer = pending.pop();
+            Object node = pendingContainer.container();
+            Disclosure enclosing = pendingContainer.enclosing();
+            if (!visited.add(node)) {
+                continue;
+            }
+            Collection<Disclosure> revealedDisclosures = List.of();
+            if (node instanceof Map<?, ?> map) {
+                map.values().forEach(value -> pushContainer(pending, value, enclosing));
+                if (map.containsKey(SD_KEY)) {
+                    RevealedObject revealedObject = of(map, disclosuresByHash);
+                    if (revealedObject != null) {
+                        revealedContainers.put(map, revealedObject);
+                        revealedDisclosures = revealedObject.revealed.values();
+                    }
+                }
+            } else if (node instanceof List<?> list) {
+                list.forEach(value -> pushContainer(pending, value, enclosing));
+                RevealedArray revealedArray = RevealedArray.of(list, disclosuresByHash);
+                if (revealedArray != null) {
+                    revealedContainers.put(list, revealedArray);
+                    revealedDisclosures = revealedArray.getRevealedDisclosures();
+                } else {
+                    revealedContainers.put(list, list);
+                }
+            }
+            for (Disclosure disclosure : revealedDisclosures) {
+                if (enclosing != null) {
+                    parentHashes.putIfAbsent(disclosure.getSdHash(), enclosing.getSdHash());
+                }
+                pushContainer(pending, disclosure.getValue(), disclosure);
+            }
+        }
+        return revealedContainers;
+    }
+
+    private static void pushContainer(Deque<PendingContainer> pending, Object value, Disclosure enclosing) {
+        if (value instanceof Map<?, ?> || value instanceof List<?>) {
+            pending.push(new PendingContainer(value, enclosing));
+        }
+    }
+
+    // a container to be visited, together with the disclosure it is (transitively) contained in. Null for the payload
+    private record PendingContainer(Object container, Disclosure enclosing) {
+    }
+
+    /**
+     * Returns the disclosure revealing the key, null if the key is not revealed or is overwritten by the original
+     * object.
+     */
+    public Disclosure getDisclosure(String key) {
+        if (containsOriginal(key)) {
+            return null;
+        }
+        return revealed.get(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (containsOriginal(key)) {
+            return original.get(key);
+        }
+        Disclosure disclosure = revealed.get(key);
+        return disclosure == null ? null : disclosure.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return containsOriginal(key) || revealed.containsKey(key);
+    }
+
+    // the _sd entry itself is hidden by the view
+    private boolean containsOriginal(Object key) {
+        return !SD_KEY.equals(key) && original.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entries = entrySet;
+        if (entries == null) {
+            Map<String, Object> merged = new LinkedHashMap<>();
+            revealed.forEach((claim, disclosure) -> merged.put(claim, disclosure.getValue()));
+            for (Entry<?, ?> entry : original.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                if (!SD_KEY.equals(key)) {
+                    merged.put(key, entry.getValue());
+                }
+            }
+            entries = Collections.unmodifiableMap(merged).entrySet();
+            entrySet = entries;
+        }
+        return entries;
+    }
+}
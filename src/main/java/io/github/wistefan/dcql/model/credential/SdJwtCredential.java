@@ -1,9 +1,9 @@
 package io.github.wistefan.dcql.model.credential;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
-import java.util.List;
-import java.util.StringJoiner;
+import java.util.*;
 
 /**
  * Holder of SdJwtCredential, providing access to its deserialized contents.
@@ -11,7 +11,7 @@ import java.util.StringJoiner;
 @Getter
 public class SdJwtCredential extends CredentialBase {
 
-    private static final String SD_JWT_SEPARATOR = "~";
+    private static final char SD_JWT_SEPARATOR = '~';
 
     /**
      * The "standard"-jwt contents of the credential
@@ -22,6 +22,20 @@ public class SdJwtCredential extends CredentialBase {
      */
     private List<Disclosure> disclosures;
 
+    // index of the disclosures by their sd hash, built on first access
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, Disclosure> disclosuresByHash;
+    // positions of the disclosures by their sd hash, built on first access
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, Integer> disclosurePositions;
+    // views of the objects with _sd entries and of the arrays with element digests, by their identity, and the hashes
+    // of the disclosures enclosing nested disclosures. Built on first access
+    @Getter(AccessLevel.NONE)
+    private volatile Structure structure;
+    // end of the issuer-signed jwt inside the raw credential, determined on first access. Shared with the copies.
+    @Getter(AccessLevel.NONE)
+    private int issuerJwtEnd = -1;
+
     public SdJwtCredential(String raw, JwtCredential jwtCredential, List<Disclosure> disclosures) {
         super(raw);
         this.jwtCredential = jwtCredential;
@@ -37,15 +51,156 @@ public class SdJwtCredential extends CredentialBase {
         if (raw == null) {
             return null;
         }
-        String[] splittedRaw = super.getRaw().split(SD_JWT_SEPARATOR);
-        StringJoiner sdJoiner = new StringJoiner(SD_JWT_SEPARATOR);
-        // first element is the plain jwt.
-        sdJoiner.add(splittedRaw[0]);
-        disclosures.stream()
-                .map(Disclosure::getEncodedDisclosure)
-                .forEach(sdJoiner::add);
-        // the sd needs to end with an ~
-        return sdJoiner + SD_JWT_SEPARATOR;
+        StringBuilder presentation = new StringBuilder(SdJwtPresentationWriter.length(this));
+        SdJwtPresentationWriter.write(this, presentation);
+        return presentation.toString();
+    }
+
+    /**
+     * Copy of the credential, only containing the given disclosures. The copy shares the raw credential and the end of
+     * its issuer-signed jwt. The indexes of the disclosures and the revealed structure depend on the selected
+     * disclosures, thus they are built again on first access.
+     */
+    public SdJwtCredential withDisclosures(List<Disclosure> selectedDisclosures) {
+        SdJwtCredential copy = new SdJwtCredential(raw, jwtCredential, selectedDisclosures);
+        copy.issuerJwtEnd = issuerJwtEnd;
+        return copy;
+    }
+
+    /**
+     * Copy of the credential, only containing the disclosures at the positions set in the mask. Used to create the
+     * presentation of the final result, after the disclosures of all claims are selected.
+     */
+    public SdJwtCredential withDisclosures(BitSet selectedDisclosures) {
+        List<Disclosure> disclosureList = new ArrayList<>(selectedDisclosures.cardinality());
+        for (int i = selectedDisclosures.nextSetBit(0); i >= 0; i = selectedDisclosures.nextSetBit(i + 1)) {
+            disclosureList.add(disclosures.get(i));
+        }
+        return withDisclosures(disclosureList);
+    }
+
+    /**
+     * Returns the position of the disclosure with the given sd hash, -1 if there is none. If multiple disclosures share
+     * a hash, the last one is used.
+     */
+    public int getDisclosurePosition(String sdHash) {
+        Map<String, Integer> positions = disclosurePositions;
+        if (positions == null) {
+            positions = new HashMap<>();
+            if (disclosures != null) {
+                for (int i = 0; i < disclosures.size(); i++) {
+                    positions.put(disclosures.get(i).getSdHash(), i);
+                }
+            }
+            disclosurePositions = positions;
+        }
+        Integer position = positions.get(sdHash);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Sets the position of the disclosure with the given sd hash in the mask, together with the positions of all
+     * disclosures it is nested in. Without them, the disclosure could not be resolved from the presentation. Unknown
+     * hashes are ignored.
+     */
+    public void selectDisclosure(String sdHash, BitSet mask) {
+        if (disclosures == null) {
+            return;
+        }
+        Map<String, String> parentHashes = structure().parentHashes();
+        // bounded by the number of disclosures, a chain cannot be longer
+        for (int i = 0; sdHash != null && i <= disclosures.size(); i++) {
+            int position = getDisclosurePosition(sdHash);
+            if (position < 0) {
+                return;
+            }
+            mask.set(position);
+            sdHash = parentHashes.get(sdHash);
+        }
+    }
+
+    /**
+     * The complete raw credential, as it was provided. Null if none was provided.
+     */
+    String getOriginalRaw() {
+        return raw;
+    }
+
+    /**
+     * End of the issuer-signed jwt inside the raw credential, the whole raw if it contains no separator.
+     */
+    int getIssuerJwtEnd() {
+        int end = issuerJwtEnd;
+        if (end < 0) {
+            end = raw.indexOf(SD_JWT_SEPARATOR);
+            if (end < 0) {
+                end = raw.length();
+            }
+            issuerJwtEnd = end;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the disclosures by their sd hash, to resolve the _sd entries of the credential. If multiple disclosures
+     * share a hash, the last one is used. Empty if the credential contains no disclosures.
+     */
+    public Map<String, Disclosure> getDisclosuresByHash() {
+        Map<String, Disclosure> index = disclosuresByHash;
+        if (index == null) {
+            index = new HashMap<>();
+            if (disclosures != null) {
+                for (Disclosure disclosure : disclosures) {
+                    index.put(disclosure.getSdHash(), disclosure);
+                }
+            }
+            index = Collections.unmodifiableMap(index);
+            disclosuresByHash = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns a read-only view of the given object of the credential, with the claims of its "_sd" entry revealed
+     * through the disclosures. Views of all objects of the payload are created once and cached. Returns null if the
+     * "_sd" entry of the object is invalid.
+     */
+    public Map<String, Object> reveal(Map<?, ?> object) {
+        // objects that are not part of the payload are not cached
+        return structure().revealedContainers().get(object) instanceof RevealedObject revealedObject ?
+                revealedObject :
+                RevealedObject.of(object, getDisclosuresByHash());
+    }
+
+    /**
+     * Returns a read-only view of the given array of the credential, with its element digests replaced by the
+     * disclosed values. Arrays without digests are returned as they are. Like the objects, the arrays of the payload
+     * are resolved once and cached.
+     */
+    public List<?> reveal(List<?> array) {
+        Object revealed = structure().revealedContainers().get(array);
+        if (revealed != null) {
+            return (List<?>) revealed;
+        }
+        // arrays that are not part of the payload are not cached
+        RevealedArray revealedArray = RevealedArray.of(array, getDisclosuresByHash());
+        return revealedArray != null ? revealedArray : array;
+    }
+
+    private Structure structure() {
+        Structure current = structure;
+        if (current == null) {
+            Map<String, String> parentHashes = new HashMap<>();
+            Map<Object, Object> revealedContainers = jwtCredential == null ?
+                    Map.of() :
+                    RevealedObject.collect(jwtCredential.getPayload(), getDisclosuresByHash(), parentHashes);
+            current = new Structure(revealedContainers, parentHashes);
+            structure = current;
+        }
+        return current;
+    }
+
+    private record Structure(Map<Object, Object> revealedContainers, Map<String, String> parentHashes) {
     }
 
     public String getVct() {
@@ -56,4 +211,8 @@ public class SdJwtCredential extends CredentialBase {
         return jwtCredential.getType();
     }
 
+    public Set<String> getTypeSet() {
+        return jwtCredential.getTypeSet();
+    }
+
 }
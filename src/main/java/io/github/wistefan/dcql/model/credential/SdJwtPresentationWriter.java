@@ -0,0 +1,150 @@
+package io.github.wistefan.dcql.model.credential;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Writes the presentation of an {@link SdJwtCredential}: the issuer-signed jwt, followed by the disclosures of the
+ * credential, each terminated by "~". The issuer-signed jwt is written directly from the raw credential, no
+ * intermediate strings are created.
+ * <p>
+ * SD-JWTs only consist of base64url encoded parts and separators, thus they are written as ASCII to byte targets.
+ */
+public final class SdJwtPresentationWriter {
+
+    private static final char SD_JWT_SEPARATOR = '~';
+    // size of the chunks written to output streams
+    private static final int CHUNK_SIZE = 1024;
+
+    private SdJwtPresentationWriter() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the number of characters(and bytes) of the presentation.
+     */
+    public static int length(SdJwtCredential credential) {
+        int length = credential.getIssuerJwtEnd() + 1;
+        for (Disclosure disclosure : disclosures(credential)) {
+            length += disclosure.getEncodedDisclosure().length() + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Write the presentation to the given appendable.
+     */
+    public static void write(SdJwtCredential credential, Appendable target) throws IOException {
+        String raw = requireRaw(credential);
+        target.append(raw, 0, credential.getIssuerJwtEnd()).append(SD_JWT_SEPARATOR);
+        for (Disclosure disclosure : disclosures(credential)) {
+            target.append(disclosure.getEncodedDisclosure()).append(SD_JWT_SEPARATOR);
+        }
+    }
+
+    /**
+     * Write the presentation to the given string builder.
+     */
+    public static void write(SdJwtCredential credential, StringBuilder target) {
+        try {
+            write(credential, (Appendable) target);
+        } catch (IOException e) {
+            // string builders do not throw
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the presentation to the given stream, in chunks. The stream is neither flushed nor closed.
+     */
+    public static void write(SdJwtCredential credential, OutputStream target) throws IOException {
+        String raw = requireRaw(credential);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int position = copy(raw, 0, credential.getIssuerJwtEnd(), chunk, 0, target);
+        position = put(SD_JWT_SEPARATOR, chunk, position, target);
+        for (Disclosure disclosure : disclosures(credential)) {
+            String encodedDisclosure = disclosure.getEncodedDisclosure();
+            position = copy(encodedDisclosure, 0, encodedDisclosure.length(), chunk, position, target);
+            position = put(SD_JWT_SEPARATOR, chunk, position, target);
+        }
+        target.write(chunk, 0, position);
+    }
+
+    /**
+     * Write the presentation to the given buffer, starting at its current position. Fails with a
+     * {@link BufferOverflowException} if the remaining space is not sufficient and with an
+     * {@link IllegalArgumentException} if the presentation contains non-ASCII characters. In both cases, nothing is
+     * written.
+     */
+    public static void write(SdJwtCredential credential, ByteBuffer target) {
+        String raw = requireRaw(credential);
+        if (target.remaining() < length(credential)) {
+            throw new BufferOverflowException();
+        }
+        // validate upfront, the buffer cannot be restored once a part was written
+        requireAscii(raw, 0, credential.getIssuerJwtEnd());
+        for (Disclosure disclosure : disclosures(credential)) {
+            requireAscii(disclosure.getEncodedDisclosure(), 0, disclosure.getEncodedDisclosure().length());
+        }
+        put(raw, 0, credential.getIssuerJwtEnd(), target);
+        target.put((byte) SD_JWT_SEPARATOR);
+        for (Disclosure disclosure : disclosures(credential)) {
+            String encodedDisclosure = disclosure.getEncodedDisclosure();
+            put(encodedDisclosure, 0, encodedDisclosure.length(), target);
+            target.put((byte) SD_JWT_SEPARATOR);
+        }
+    }
+
+    private static String requireRaw(SdJwtCredential credential) {
+        String raw = credential.getOriginalRaw();
+        if (raw == null) {
+            throw new IllegalArgumentException("The credential does not contain a raw sd-jwt.");
+        }
+        return raw;
+    }
+
+    private static List<Disclosure> disclosures(SdJwtCredential credential) {
+        return credential.getDisclosures() == null ? List.of() : credential.getDisclosures();
+    }
+
+    // the characters have to be validated through requireAscii before
+    private static void put(String value, int start, int end, ByteBuffer target) {
+        for (int i = start; i < end; i++) {
+            target.put((byte) value.charAt(i));
+        }
+    }
+
+    private static void requireAscii(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            ascii(value.charAt(i));
+        }
+    }
+
+    // copies the characters into the chunk, writing it to the stream whenever it is full. Returns the new position.
+    private static int copy(String value, int start, int end, byte[] chunk, int position, OutputStream target) throws IOException {
+        for (int i = start; i < end; i++) {
+            position = put(value.charAt(i), chunk, position, target);
+        }
+        return position;
+    }
+
+    private static int put(char character, byte[] chunk, int position, OutputStream target) throws IOException {
+        if (position == chunk.length) {
+            target.write(chunk, 0, position);
+            position = 0;
+        }
+        chunk[position] = ascii(character);
+        return position + 1;
+    }
+
+    private static byte ascii(char character) {
+        if (character > 0x7F) {
+            throw new IllegalArgumentException("The sd-jwt contains non-ASCII characters.");
+        }
+        return (byte) character;
+    }
+}
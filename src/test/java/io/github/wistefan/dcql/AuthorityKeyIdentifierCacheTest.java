@@ -0,0 +1,76 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.TrustedAuthorityQuery;
+import io.github.wistefan.dcql.model.TrustedAuthorityType;
+import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthorityKeyIdentifierCacheTest {
+
+    @Test
+    @DisplayName("The aki of a certificate is only extracted once.")
+    public void testExtractOnce() {
+        AtomicInteger extractions = new AtomicInteger();
+        AuthorityKeyIdentifierCache cache = new AuthorityKeyIdentifierCache(10, certificate -> {
+            extractions.incrementAndGet();
+            return TrustedAuthoritiesEvaluator.getAuthorityKeyIdentifier(certificate).map(KeyIdentifier::of);
+        });
+        KeyPair keyPair = DcqlTest.generateTestKeyPair();
+        X509Certificate certificate = DcqlTest.generateTestCertificate(keyPair);
+        KeyIdentifier expected = KeyIdentifier.of(DcqlTest.generateTestAki(keyPair).getKeyIdentifier());
+
+        assertEquals(Optional.of(expected), cache.get(certificate));
+        assertEquals(Optional.of(expected), cache.get(certificate));
+        assertEquals(1, extractions.get());
+    }
+
+    @Test
+    @DisplayName("The least recently used certificates are evicted, once the cache is full.")
+    public void testEviction() {
+        AtomicInteger extractions = new AtomicInteger();
+        AuthorityKeyIdentifierCache cache = new AuthorityKeyIdentifierCache(2, certificate -> {
+            extractions.incrementAndGet();
+            return Optional.empty();
+        });
+        X509Certificate first = DcqlTest.generateTestCertificate(DcqlTest.generateTestKeyPair());
+        X509Certificate second = DcqlTest.generateTestCertificate(DcqlTest.generateTestKeyPair());
+        X509Certificate third = DcqlTest.generateTestCertificate(DcqlTest.generateTestKeyPair());
+
+        cache.get(first);
+        cache.get(second);
+        // first becomes the most recently used, second is evicted
+        cache.get(first);
+        cache.get(third);
+        assertEquals(2, cache.size());
+        assertEquals(3, extractions.get());
+
+        cache.get(first);
+        assertEquals(3, extractions.get());
+        cache.get(second);
+        assertEquals(4, extractions.get());
+    }
+
+    @Test
+    @DisplayName("Aki values are decoded at compile time, invalid and non-padded values are ignored.")
+    public void testCompileAkiValues() {
+        KeyIdentifier keyIdentifier = KeyIdentifier.of(new byte[]{1, 2, 3, 4});
+        KeyIdentifier otherKeyIdentifier = KeyIdentifier.of(new byte[]{5, 6, 7, 8});
+        CompiledTrustedAuthorityQuery query = DcqlCompiler.compile(new TrustedAuthorityQuery(TrustedAuthorityType.AKI,
+                List.of(keyIdentifier.toBase64Url(), "not base64!", otherKeyIdentifier.toBase64Url().replace("=", ""))));
+
+        assertEquals("AQIDBA==", keyIdentifier.toBase64Url());
+        assertEquals(Set.of(keyIdentifier), query.getAuthorityKeyIdentifiers());
+        assertTrue(DcqlCompiler.compile(new TrustedAuthorityQuery(TrustedAuthorityType.ETSI_TL, List.of("https://list.com")))
+                .getAuthorityKeyIdentifiers().isEmpty());
+    }
+}
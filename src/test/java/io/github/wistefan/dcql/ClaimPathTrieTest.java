@@ -0,0 +1,136 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+import io.github.wistefan.dcql.model.credential.Disclosure;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.SdJwtCredential;
+import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimPathTrieTest {
+
+    private static final Map<String, Object> CREDENTIAL = Map.of(
+            "credentialSubject", Map.of(
+                    "first_name", "Arthur",
+                    "address", Map.of("street_address", "42 Market Street", "country", "DE"),
+                    "nationalities", List.of("British", "Betelgeusian")));
+
+    @Test
+    @DisplayName("Claims with a shared prefix share the nodes of the trie.")
+    public void testSharedPrefix() {
+        ClaimPathTrie claimPathTrie = ClaimPathTrie.compile(List.of(
+                claim(null, "credentialSubject", "first_name"),
+                claim(null, "credentialSubject", "address", "country"),
+                claim(null, "credentialSubject", "address", "street_address"),
+                claim(null, "credentialSubject", "nationalities", 0),
+                claim(null, "credentialSubject", "nationalities", 0L)));
+        // credentialSubject, first_name, address, country, street_address, nationalities, 0
+        assertEquals(7, claimPathTrie.size(), "Shared prefixes and equal indexes should be merged.");
+        assertEquals(5, claimPathTrie.getClaims().size(), "All claims should be contained.");
+    }
+
+    @ParameterizedTest
+    @MethodSource("claimCombinations")
+    @DisplayName("The trie is fulfilled exactly if all of its claims are fulfilled on their own.")
+    public void testMatchesAll(List<CompiledClaimsQuery> claims) {
+        boolean expected = claims.stream().allMatch(claim -> ClaimsEvaluator.matches(claim, CREDENTIAL));
+        assertEquals(expected, ClaimsEvaluator.matchesAll(ClaimPathTrie.compile(claims), CREDENTIAL));
+    }
+
+    @Test
+    @DisplayName("An empty trie is fulfilled by every credential.")
+    public void testEmptyTrie() {
+        assertTrue(ClaimsEvaluator.matchesAll(ClaimPathTrie.compile(List.of()), CREDENTIAL));
+    }
+
+    @ParameterizedTest
+    @MethodSource("claimCombinations")
+    @DisplayName("The trie selects the same disclosures as the claims on their own.")
+    public void testSelectDisclosures(List<CompiledClaimsQuery> claims) {
+        SdJwtCredential credential = sdJwtCredential();
+
+        BitSet expected = new BitSet();
+        boolean expectedAllMatched = true;
+        for (CompiledClaimsQuery claim : claims) {
+            expectedAllMatched &= ClaimsEvaluator.selectDisclosures(claim, credential, expected);
+        }
+
+        BitSet selectedDisclosures = new BitSet();
+        assertEquals(expectedAllMatched, ClaimsEvaluator.selectDisclosures(ClaimPathTrie.compile(claims), credential, selectedDisclosures));
+        assertEquals(expected, selectedDisclosures);
+    }
+
+    @Test
+    @DisplayName("A claim that is not fulfilled does not prevent the disclosures of the other claims.")
+    public void testSelectDisclosuresPartially() {
+        SdJwtCredential credential = sdJwtCredential();
+        BitSet selectedDisclosures = new BitSet();
+        assertFalse(ClaimsEvaluator.selectDisclosures(ClaimPathTrie.compile(List.of(
+                claim(null, "credentialSubject", "last_name"),
+                claim(null, "credentialSubject", "address", "country"))), credential, selectedDisclosures));
+        assertEquals(List.of("country", "address"), credential.withDisclosures(selectedDisclosures).getDisclosures().stream()
+                .map(Disclosure::getClaim)
+                .toList(), "The country should be disclosed, together with the address containing it.");
+    }
+
+    private static Stream<Arguments> claimCombinations() {
+        return Stream.of(
+                Arguments.of(List.of(claim(null, "credentialSubject", "first_name"))),
+                Arguments.of(List.of(
+                        claim(null, "credentialSubject", "first_name"),
+                        claim(null, "credentialSubject", "address", "country"))),
+                Arguments.of(List.of(
+                        claim(List.of("Arthur"), "credentialSubject", "first_name"),
+                        claim(List.of("DE"), "credentialSubject", "address", "country"),
+                        claim(null, "credentialSubject", "address", "street_address"))),
+                Arguments.of(List.of(
+                        claim(List.of("Ford"), "credentialSubject", "first_name"),
+                        claim(null, "credentialSubject", "address", "country"))),
+                Arguments.of(List.of(
+                        claim(null, "credentialSubject", "address"),
+                        claim(null, "credentialSubject", "address", "city"))),
+                Arguments.of(List.of(
+                        claim(null, "credentialSubject", "nationalities", null),
+                        claim(List.of("British"), "credentialSubject", "nationalities", 0))),
+                Arguments.of(List.of(
+                        claim(List.of("British", "Betelgeusian"), "credentialSubject", "nationalities", null),
+                        claim(null, "credentialSubject", "first_name", 0))),
+                Arguments.of(List.of(
+                        claim(null, "credentialSubject", "first_name"),
+                        claim(List.of("DE"), "credentialSubject", "address", "country"),
+                        claim(List.of("DE"), "credentialSubject", "address", "country"))));
+    }
+
+    // same contents as CREDENTIAL, with the subject and its address disclosed selectively
+    private static SdJwtCredential sdJwtCredential() {
+        Disclosure country = DcqlTest.getDisclosure("salt-1", "country", "DE");
+        Disclosure streetAddress = DcqlTest.getDisclosure("salt-2", "street_address", "42 Market Street");
+        Disclosure address = DcqlTest.getDisclosure("salt-3", "address",
+                Map.of("_sd", List.of(country.getSdHash(), streetAddress.getSdHash())));
+        Disclosure firstName = DcqlTest.getDisclosure("salt-4", "first_name", "Arthur");
+        Map<String, Object> payload = Map.of("credentialSubject", Map.of(
+                "_sd", List.of(address.getSdHash(), firstName.getSdHash()),
+                "nationalities", List.of("British", "Betelgeusian")));
+        return new SdJwtCredential(null, new JwtCredential(null, Map.of(), payload, null),
+                List.of(country, streetAddress, address, firstName));
+    }
+
+    private static CompiledClaimsQuery claim(List<Object> values, Object... path) {
+        return DcqlCompiler.compile(new ClaimsQuery(null, new ArrayList<>(Arrays.asList(path)), values));
+    }
+}
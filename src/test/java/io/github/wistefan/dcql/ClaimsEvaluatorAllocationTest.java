@@ -0,0 +1,118 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+import io.github.wistefan.dcql.model.credential.Disclosure;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.SdJwtCredential;
+import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Micro-benchmark for the reject path of the {@link ClaimsEvaluator}. Measures the bytes allocated by the current
+ * thread while evaluating claims queries that do not match. The result depends on the JIT, thus it is excluded from
+ * the default build and only run with the benchmark profile.
+ */
+@Tag("benchmark")
+class ClaimsEvaluatorAllocationTest {
+
+    private static final int WARM_UP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 100_000;
+    // allow some bytes for the measurement itself
+    private static final long ALLOCATION_TOLERANCE = 1024;
+
+    private static final Map<String, Object> CREDENTIAL = Map.of(
+            "credentialSubject", Map.of(
+                    "first_name", "Arthur",
+                    "address", Map.of("street_address", "42 Market Street", "country", "DE"),
+                    "nationalities", List.of("British", "Betelgeusian")));
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    @BeforeAll
+    public static void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Rejecting a missing claim does not allocate.")
+    public void missingClaimDoesNotAllocate() {
+        assertRejectWithoutAllocation(DcqlCompiler.compile(new ClaimsQuery("id", List.of("credentialSubject", "last_name"), null)));
+    }
+
+    @Test
+    @DisplayName("Rejecting a claim of an unexpected type does not allocate.")
+    public void unexpectedTypeDoesNotAllocate() {
+        assertRejectWithoutAllocation(DcqlCompiler.compile(new ClaimsQuery("id", List.of("credentialSubject", "first_name", 0), null)));
+    }
+
+    @Test
+    @DisplayName("Rejecting a claim with a not-allowed value does not allocate.")
+    public void valueMismatchDoesNotAllocate() {
+        List<Object> wildcardPath = new ArrayList<>();
+        wildcardPath.add("credentialSubject");
+        wildcardPath.add("nationalities");
+        wildcardPath.add(null);
+        assertRejectWithoutAllocation(DcqlCompiler.compile(new ClaimsQuery("id", wildcardPath, List.of("German"))));
+    }
+
+    @Test
+    @DisplayName("Rejecting a missing claim of an sd-jwt does not allocate, once the disclosures are revealed.")
+    public void sdJwtMissingClaimDoesNotAllocate() {
+        Disclosure address = DcqlTest.getDisclosure("salt-1", "address", Map.of("country", "DE"));
+        Disclosure firstName = DcqlTest.getDisclosure("salt-2", "first_name", "Arthur");
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of(
+                "credentialSubject", Map.of("_sd", List.of(address.getSdHash(), firstName.getSdHash()), "id", "did:key:arthur")), null),
+                List.of(address, firstName));
+        CompiledClaimsQuery claimsQuery = DcqlCompiler.compile(new ClaimsQuery("id", List.of("credentialSubject", "address", "street_address"), null));
+        BitSet selectedDisclosures = new BitSet();
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            assertFalse(ClaimsEvaluator.selectDisclosures(claimsQuery, sdJwtCredential, selectedDisclosures));
+        }
+        long threadId = Thread.currentThread().threadId();
+        boolean matched = false;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            matched |= ClaimsEvaluator.selectDisclosures(claimsQuery, sdJwtCredential, selectedDisclosures);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertFalse(matched);
+        assertTrue(selectedDisclosures.isEmpty());
+        assertTrue(allocated < ALLOCATION_TOLERANCE,
+                String.format("Rejecting %s credentials allocated %s bytes.", MEASURED_ITERATIONS, allocated));
+    }
+
+    private static void assertRejectWithoutAllocation(CompiledClaimsQuery claimsQuery) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            assertFalse(ClaimsEvaluator.matches(claimsQuery, CREDENTIAL));
+        }
+        long threadId = Thread.currentThread().threadId();
+        boolean matched = false;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            matched |= ClaimsEvaluator.matches(claimsQuery, CREDENTIAL);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertFalse(matched);
+        assertTrue(allocated < ALLOCATION_TOLERANCE,
+                String.format("Rejecting %s credentials allocated %s bytes.", MEASURED_ITERATIONS, allocated));
+    }
+}
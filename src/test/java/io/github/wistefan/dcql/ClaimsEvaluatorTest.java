@@ -5,20 +5,95 @@ import io.github.wistefan.dcql.model.credential.Disclosure;
 import io.github.wistefan.dcql.model.credential.JwtCredential;
 import io.github.wistefan.dcql.model.credential.SdJwtCredential;
 import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ClaimsEvaluatorTest {
 
+    @Test
+    @DisplayName("Disclosures selected by multiple claims are combined into one mask, in credential order.")
+    public void testCombineDisclosureSelections() {
+        Disclosure givenName = DcqlTest.getDisclosure("salt-1", "given_name", "Arthur");
+        Disclosure familyName = DcqlTest.getDisclosure("salt-2", "family_name", "Dent");
+        Disclosure age = DcqlTest.getDisclosure("salt-3", "age", 42);
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, null,
+                Map.of("_sd", List.of(givenName.getSdHash(), familyName.getSdHash(), age.getSdHash())), null),
+                List.of(givenName, familyName, age));
+        BitSet selectedDisclosures = new BitSet();
+
+        assertTrue(ClaimsEvaluator.selectDisclosures(DcqlCompiler.compile(new ClaimsQuery("age", List.of("age"), null)), sdJwtCredential, selectedDisclosures));
+        assertTrue(ClaimsEvaluator.selectDisclosures(DcqlCompiler.compile(new ClaimsQuery("name", List.of("given_name"), null)), sdJwtCredential, selectedDisclosures));
+        assertFalse(ClaimsEvaluator.selectDisclosures(DcqlCompiler.compile(new ClaimsQuery("other", List.of("other"), null)), sdJwtCredential, selectedDisclosures));
+
+        assertEquals(List.of(givenName, age), sdJwtCredential.withDisclosures(selectedDisclosures).getDisclosures());
+    }
+
+    @Test
+    @DisplayName("Wildcard and index selections over array element disclosures only disclose the selected elements.")
+    public void testArrayElementDisclosures() {
+        Disclosure british = DcqlTest.getArrayElementDisclosure("salt-1", "British");
+        Disclosure betelgeusian = DcqlTest.getArrayElementDisclosure("salt-2", "Betelgeusian");
+        Disclosure nationalities = DcqlTest.getDisclosure("salt-3", "nationalities",
+                List.of(Map.of("...", british.getSdHash()), Map.of("...", betelgeusian.getSdHash())));
+        Disclosure givenName = DcqlTest.getDisclosure("salt-4", "given_name", "Arthur");
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, null,
+                Map.of("_sd", List.of(nationalities.getSdHash(), givenName.getSdHash())), null),
+                List.of(british, betelgeusian, nationalities, givenName));
+
+        List<Object> wildcardPath = new ArrayList<>();
+        wildcardPath.add("nationalities");
+        wildcardPath.add(null);
+        Optional<SdJwtCredential> allElements = ClaimsEvaluator.evaluateClaimsForSdJwtCredential(
+                new ClaimsQuery("id", wildcardPath, List.of("British", "Betelgeusian")), sdJwtCredential);
+        assertTrue(allElements.isPresent());
+        // the disclosure of the array itself is required to reveal its elements
+        assertEquals(List.of(british, betelgeusian, nationalities), allElements.get().getDisclosures());
+
+        Optional<SdJwtCredential> secondElement = ClaimsEvaluator.evaluateClaimsForSdJwtCredential(
+                new ClaimsQuery("id", List.of("nationalities", 1), List.of("Betelgeusian")), sdJwtCredential);
+        assertTrue(secondElement.isPresent());
+        assertEquals(List.of(betelgeusian, nationalities), secondElement.get().getDisclosures());
+
+        assertFalse(ClaimsEvaluator.evaluateClaimsForSdJwtCredential(
+                new ClaimsQuery("id", wildcardPath, List.of("British")), sdJwtCredential).isPresent());
+    }
+
+    @Test
+    @DisplayName("Claims nested in disclosed objects are presented together with the disclosures of all enclosing objects.")
+    public void testNestedObjectDisclosures() {
+        Disclosure street = DcqlTest.getDisclosure("salt-1", "street", "Country Lane");
+        Disclosure locality = DcqlTest.getDisclosure("salt-2", "locality", "Cottington");
+        Disclosure address = DcqlTest.getDisclosure("salt-3", "address",
+                Map.of("_sd", List.of(street.getSdHash(), locality.getSdHash()), "country", "GB"));
+        Disclosure givenName = DcqlTest.getDisclosure("salt-4", "given_name", "Arthur");
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, null,
+                Map.of("_sd", List.of(address.getSdHash(), givenName.getSdHash())), null),
+                List.of(street, locality, address, givenName));
+
+        Optional<SdJwtCredential> streetResult = ClaimsEvaluator.evaluateClaimsForSdJwtCredential(
+                new ClaimsQuery("id", List.of("address", "street"), List.of("Country Lane")), sdJwtCredential);
+        assertTrue(streetResult.isPresent());
+        assertEquals(List.of(street, address), streetResult.get().getDisclosures());
+
+        // plain claims of a disclosed object only require the disclosure of the object
+        Optional<SdJwtCredential> countryResult = ClaimsEvaluator.evaluateClaimsForSdJwtCredential(
+                new ClaimsQuery("id", List.of("address", "country"), List.of("GB")), sdJwtCredential);
+        assertTrue(countryResult.isPresent());
+        assertEquals(List.of(address), countryResult.get().getDisclosures());
+    }
+
     @ParameterizedTest
     @MethodSource("jwtArgs")
     public void testEvaluateForJwtCredential(ClaimsQuery claimsQuery, Map<String, Object> credential, boolean expectedResult) {
@@ -37,6 +112,20 @@ class ClaimsEvaluatorTest {
         expectedDisclosures.ifPresent(disclosureList -> assertEquals(disclosureList, optionalSdJwtCredential.get().getDisclosures()));
     }
 
+    @ParameterizedTest
+    @MethodSource("invalidPaths")
+    public void testInvalidPathsAreRejected(List<Object> path) {
+        assertThrows(IllegalArgumentException.class, () -> ClaimPath.compile(path));
+    }
+
+    public static Stream<Arguments> invalidPaths() {
+        return Stream.of(
+                Arguments.of(List.of()),
+                Arguments.of(List.of("test", -1)),
+                Arguments.of(List.of("test", 1.5)),
+                Arguments.of(List.of("test", Map.of())));
+    }
+
     public static Stream<Arguments> sdJwtArgs() {
         return Stream.of(
 
@@ -96,7 +185,10 @@ class ClaimsEvaluatorTest {
                 Arguments.of(new ClaimsQuery("id", nullList, List.of("c")), Map.of("test", List.of(Map.of("a", "b"), Map.of("a", "d"))), false),
                 Arguments.of(new ClaimsQuery("id", List.of("test", "a"), null), Map.of("test", Map.of("a", "b", "c", "d")), true),
                 Arguments.of(new ClaimsQuery("id", List.of("test", "d"), null), Map.of("test", Map.of("a", "b", "c", "d")), false),
-                Arguments.of(new ClaimsQuery("id", List.of("test", "a"), List.of("b")), Map.of("test", Map.of("a", "b", "c", "d")), true)
+                Arguments.of(new ClaimsQuery("id", List.of("test", "a"), List.of("b")), Map.of("test", Map.of("a", "b", "c", "d")), true),
+                Arguments.of(new ClaimsQuery("id", List.of("test", 1, "a"), List.of("d")), Map.of("test", List.of(Map.of("a", "b"), Map.of("a", "d"))), true),
+                Arguments.of(new ClaimsQuery("id", List.of("test", 2, "a"), null), Map.of("test", List.of(Map.of("a", "b"), Map.of("a", "d"))), false),
+                Arguments.of(new ClaimsQuery("id", List.of("test", 0), null), Map.of("test", Map.of("a", "b")), false)
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.*;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.LdpCredential;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import io.github.wistefan.dcql.model.credential.MDocHeaders;
+import io.github.wistefan.dcql.model.credential.SdJwtCredential;
+import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialWalletTest {
+
+    private static final Credential MDL = mdoc("org.iso.18013.5.1.mDL");
+    private static final Credential MVRC = mdoc("org.iso.7367.1.mVRC");
+    private static final Credential PID = sdJwt(CredentialFormat.DC_SD_JWT, "urn:eu.europa.ec.eudi:pid:1");
+    private static final Credential IDENTITY = sdJwt(CredentialFormat.VC_SD_JWT, "https://credentials.example.com/identity_credential");
+    private static final Credential DIPLOMA = jwt(List.of("VerifiableCredential", "UniversityDegreeCredential"));
+    private static final Credential MEMBERSHIP = ldp(List.of("VerifiableCredential", "MembershipCredential"));
+
+    @Test
+    @DisplayName("Credentials are partitioned by format, keeping their order.")
+    public void testFormatPartitions() {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDL, PID, MVRC, DIPLOMA, IDENTITY, MEMBERSHIP));
+
+        assertEquals(6, wallet.size());
+        assertEquals(List.of(MDL, MVRC), wallet.getCredentials(CredentialFormat.MSO_MDOC));
+        assertEquals(List.of(PID), wallet.getCredentials(CredentialFormat.DC_SD_JWT));
+        assertEquals(List.of(IDENTITY), wallet.getCredentials(CredentialFormat.VC_SD_JWT));
+        assertEquals(List.of(MDL, PID, MVRC, DIPLOMA, IDENTITY, MEMBERSHIP), wallet.getCredentials());
+    }
+
+    @Test
+    @DisplayName("Metadata queries are resolved through the indexes.")
+    public void testMetadataCandidates() {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDL, PID, MVRC, DIPLOMA, IDENTITY, MEMBERSHIP));
+
+        assertEquals(List.of(MVRC), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, Map.of("doctype_value", "org.iso.7367.1.mVRC"))));
+        assertEquals(List.of(), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, Map.of("doctype_value", "unknown"))));
+        assertEquals(List.of(PID), wallet.getCandidates(compile(CredentialFormat.DC_SD_JWT, Map.of("vct_values", List.of("urn:eu.europa.ec.eudi:pid:1", "https://credentials.example.com/identity_credential")))));
+        assertEquals(List.of(DIPLOMA), wallet.getCandidates(compile(CredentialFormat.JWT_VC_JSON, Map.of("type_values", List.of(List.of("UniversityDegreeCredential"), List.of("MembershipCredential"))))));
+        assertEquals(List.of(MEMBERSHIP), wallet.getCandidates(compile(CredentialFormat.LDP_VC, Map.of("type_values", List.of(List.of("VerifiableCredential", "MembershipCredential"))))));
+        assertEquals(List.of(), wallet.getCandidates(compile(CredentialFormat.LDP_VC, Map.of("type_values", List.of(List.of("VerifiableCredential", "UniversityDegreeCredential"))))));
+        assertEquals(List.of(MDL, MVRC), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null)));
+    }
+
+    @Test
+    @DisplayName("Removed credentials are no longer returned, also after compaction.")
+    public void testRemoval() {
+        List<Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            credentials.add(mdoc("doctype-" + (i % 2)));
+        }
+        CredentialWallet wallet = new CredentialWallet(credentials);
+
+        for (int i = 0; i < 150; i++) {
+            assertTrue(wallet.remove(credentials.get(i)));
+        }
+        assertFalse(wallet.remove(credentials.get(0)));
+
+        assertEquals(50, wallet.size());
+        assertEquals(credentials.subList(150, 200), wallet.getCredentials());
+        List<Credential> candidates = wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, Map.of("doctype_value", "doctype-1")));
+        assertEquals(25, candidates.size());
+        assertSame(credentials.get(151), candidates.get(0));
+    }
+
+    @Test
+    @DisplayName("Removed credentials are dropped from all indexes, not only from their format.")
+    public void testRemovalClearsIndexes() {
+        Credential german = mdoc("org.iso.18013.5.1.mDL", Map.of("org.iso.18013.5.1", Map.of("nationality", "DE")));
+        Map<String, Object> claims = ((MDocCredential) german.getRawCredential()).getPayload();
+        CompiledClaimsQuery claimsQuery = compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("nationality", List.of("org.iso.18013.5.1", "nationality"), List.of("DE"))).getClaims().get(0);
+
+        ClaimValueIndex claimValueIndex = new ClaimValueIndex();
+        claimValueIndex.add(3, claims);
+        claimValueIndex.add(5, claims);
+        claimValueIndex.remove(3, claims);
+        assertEquals(BitSet.valueOf(new long[]{1L << 5}), claimValueIndex.lookup(claimsQuery));
+        claimValueIndex.remove(5, claims);
+        assertTrue(claimValueIndex.lookup(claimsQuery).isEmpty());
+
+        CredentialWallet wallet = new CredentialWallet(List.of(german, DIPLOMA), EnumSet.allOf(WalletIndex.class));
+        wallet.remove(german);
+        wallet.remove(DIPLOMA);
+        assertEquals(List.of(), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, Map.of("doctype_value", "org.iso.18013.5.1.mDL"))));
+        assertEquals(List.of(), wallet.getCandidates(compile(CredentialFormat.JWT_VC_JSON,
+                Map.of("type_values", List.of(List.of("UniversityDegreeCredential"))))));
+        // re-adding uses a new position, the old one is not matched again
+        wallet.add(german);
+        assertEquals(List.of(german), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("nationality", List.of("org.iso.18013.5.1", "nationality"), List.of("DE")))));
+    }
+
+    @Test
+    @DisplayName("Claims queries with values are resolved through the claim value index.")
+    public void testClaimValueIndex() {
+        Credential german = mdoc("org.iso.18013.5.1.mDL", Map.of("org.iso.18013.5.1", Map.of("nationality", "DE", "age", 42)));
+        Credential french = mdoc("org.iso.18013.5.1.mDL", Map.of("org.iso.18013.5.1", Map.of("nationality", "FR", "age", 23)));
+        Credential nationalities = mdoc("org.iso.18013.5.1.mDL", Map.of("org.iso.18013.5.1", Map.of("nationalities", List.of("DE", "FR"))));
+        CredentialWallet wallet = new CredentialWallet(List.of(german, french, nationalities, PID), EnumSet.of(WalletIndex.CLAIM_VALUES));
+
+        assertEquals(List.of(german), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("nationality", List.of("org.iso.18013.5.1", "nationality"), List.of("DE", "IT")))));
+        // numbers are normalized
+        assertEquals(List.of(french), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("age", List.of("org.iso.18013.5.1", "age"), List.of(23L)))));
+        assertEquals(List.of(nationalities), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("first", List.of("org.iso.18013.5.1", "nationalities", 1), List.of("FR")))));
+        // wildcards are not answered by the index
+        assertEquals(List.of(german, french, nationalities), wallet.getCandidates(compile(CredentialFormat.MSO_MDOC, null,
+                new ClaimsQuery("all", Arrays.asList("org.iso.18013.5.1", "nationalities", null), List.of("FR")))));
+        // sd-jwt claims are not indexed
+        assertEquals(List.of(PID), wallet.getCandidates(compile(CredentialFormat.DC_SD_JWT, null,
+                new ClaimsQuery("name", List.of("given_name"), List.of("Arthur")))));
+    }
+
+    @Test
+    @DisplayName("Claims deeper than the claim value index are left to the traversal, instead of being dropped.")
+    public void testDeepClaimsAreNotResolvedByIndex() {
+        Map<String, Object> claim = Map.of("level", "deep");
+        List<Object> path = new ArrayList<>(List.of("credentialSubject"));
+        for (int i = 0; i < 33; i++) {
+            claim = Map.of("level", claim);
+            path.add("level");
+        }
+        path.add("level");
+        Credential deep = new Credential(CredentialFormat.JWT_VC_JSON, new JwtCredential(null, Map.of(), Map.of("vc", Map.of(
+                "type", List.of("VerifiableCredential"), "credentialSubject", claim)), null));
+        CredentialWallet wallet = new CredentialWallet(List.of(deep, DIPLOMA), EnumSet.of(WalletIndex.CLAIM_VALUES));
+        CompiledCredentialQuery deepQuery = compile(CredentialFormat.JWT_VC_JSON, null, new ClaimsQuery("deep", path, List.of("deep")));
+        CompiledCredentialQuery shallowQuery = compile(CredentialFormat.JWT_VC_JSON, null,
+                new ClaimsQuery("type", List.of("type", 0), List.of("VerifiableCredential")));
+
+        assertTrue(path.size() > 33);
+        assertFalse(wallet.resolvesClaims(deepQuery));
+        assertEquals(List.of(deep, DIPLOMA), wallet.getCandidates(deepQuery));
+        assertTrue(wallet.resolvesClaims(shallowQuery));
+
+        CredentialQuery credentialQuery = new CredentialQuery();
+        credentialQuery.setId("deep");
+        credentialQuery.setFormat(CredentialFormat.JWT_VC_JSON);
+        credentialQuery.setClaims(List.of(new ClaimsQuery("deep", path, List.of("deep"))));
+        DcqlQuery dcqlQuery = new DcqlQuery();
+        dcqlQuery.setCredentials(List.of(credentialQuery));
+        assertEquals(List.of(deep), new DCQLEvaluator(List.of(new JwtCredentialEvaluator()))
+                .evaluateDCQLQuery(dcqlQuery, wallet).credentials().get("credentials"));
+    }
+
+    @Test
+    @DisplayName("Trusted authorities of type aki are resolved through the authority key index.")
+    public void testAuthorityKeyIndex() {
+        KeyPair trustedKey = DcqlTest.generateTestKeyPair();
+        Credential trusted = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null,
+                new MDocHeaders(null, List.of(DcqlTest.generateTestCertificate(trustedKey))), Map.of("docType", "org.iso.18013.5.1.mDL")));
+        Credential untrusted = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null,
+                new MDocHeaders(null, List.of(DcqlTest.generateTestCertificate(DcqlTest.generateTestKeyPair()))), Map.of("docType", "org.iso.18013.5.1.mDL")));
+        CredentialWallet wallet = new CredentialWallet(List.of(untrusted, MDL, trusted), EnumSet.of(WalletIndex.AUTHORITY_KEY_IDENTIFIERS));
+        String trustedAki = Base64.getUrlEncoder().encodeToString(DcqlTest.generateTestAki(trustedKey).getKeyIdentifier());
+        CompiledCredentialQuery akiQuery = compile(CredentialFormat.MSO_MDOC, null,
+                new TrustedAuthorityQuery(TrustedAuthorityType.AKI, List.of(trustedAki)));
+
+        assertEquals(List.of(trusted), wallet.getCandidates(akiQuery));
+        // removed credentials are no longer returned
+        wallet.remove(trusted);
+        assertEquals(List.of(), wallet.getCandidates(akiQuery));
+        // without the index, aki is left to the evaluator
+        assertEquals(List.of(untrusted, MDL, trusted), new CredentialWallet(List.of(untrusted, MDL, trusted)).getCandidates(akiQuery));
+    }
+
+    @Test
+    @DisplayName("Credentials not matching their format are rejected.")
+    public void testInvalidCredentials() {
+        CredentialWallet wallet = new CredentialWallet();
+
+        assertThrows(IllegalArgumentException.class, () -> wallet.add(new Credential(CredentialFormat.MSO_MDOC, DIPLOMA.getRawCredential())));
+        assertThrows(IllegalArgumentException.class, () -> wallet.add(new Credential(null, DIPLOMA.getRawCredential())));
+        wallet.add(MDL);
+        assertThrows(IllegalArgumentException.class, () -> wallet.add(MDL));
+    }
+
+    private static CompiledCredentialQuery compile(CredentialFormat format, Map<String, Object> meta, TrustedAuthorityQuery trustedAuthorityQuery) {
+        CredentialQuery credentialQuery = new CredentialQuery();
+        credentialQuery.setId("query");
+        credentialQuery.setFormat(format);
+        credentialQuery.setMeta(meta);
+        credentialQuery.setTrustedAuthorities(List.of(trustedAuthorityQuery));
+        return DcqlCompiler.compile(credentialQuery, null);
+    }
+
+    private static CompiledCredentialQuery compile(CredentialFormat format, Map<String, Object> meta, ClaimsQuery... claims) {
+        CredentialQuery credentialQuery = new CredentialQuery();
+        credentialQuery.setId("query");
+        credentialQuery.setFormat(format);
+        credentialQuery.setMeta(meta);
+        if (claims.length > 0) {
+            credentialQuery.setClaims(List.of(claims));
+        }
+        return DcqlCompiler.compile(credentialQuery, null);
+    }
+
+    private static Credential mdoc(String docType) {
+        return new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of("docType", docType)));
+    }
+
+    private static Credential mdoc(String docType, Map<String, Object> namespaces) {
+        return new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of("docType", docType, "namespaces", namespaces)));
+    }
+
+    private static Credential sdJwt(CredentialFormat format, String vct) {
+        return new Credential(format, new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of("vct", vct), null), List.of()));
+    }
+
+    private static Credential jwt(List<String> types) {
+        return new Credential(CredentialFormat.JWT_VC_JSON, new JwtCredential(null, Map.of(), Map.of("vc", Map.of("type", types)), null));
+    }
+
+    private static Credential ldp(List<String> types) {
+        return new Credential(CredentialFormat.LDP_VC, new LdpCredential(null, Map.of("type", types)));
+    }
+}
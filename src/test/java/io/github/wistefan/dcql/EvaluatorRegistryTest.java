@@ -0,0 +1,40 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.CredentialFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluatorRegistryTest {
+
+    @Test
+    @DisplayName("The evaluators of the library are discovered through the ServiceLoader.")
+    public void testServiceLoaderDiscovery() {
+        EvaluatorRegistry evaluatorRegistry = EvaluatorRegistry.load();
+
+        assertEquals(EnumSet.allOf(CredentialFormat.class), evaluatorRegistry.getSupportedFormats());
+        assertInstanceOf(MDocCredentialEvaluator.class, evaluatorRegistry.getEvaluator(CredentialFormat.MSO_MDOC));
+        assertInstanceOf(DcSdJwtCredentialEvaluator.class, evaluatorRegistry.getEvaluator(CredentialFormat.DC_SD_JWT));
+    }
+
+    @Test
+    @DisplayName("Multiple evaluators for the same format are rejected.")
+    public void testDuplicateEvaluators() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new EvaluatorRegistry(List.of(new JwtCredentialEvaluator(), new JwtCredentialEvaluator())));
+    }
+
+    @Test
+    @DisplayName("Unsupported formats are rejected.")
+    public void testUnsupportedFormat() {
+        EvaluatorRegistry evaluatorRegistry = new EvaluatorRegistry(List.of(new JwtCredentialEvaluator()));
+
+        assertTrue(evaluatorRegistry.supports(CredentialFormat.JWT_VC_JSON));
+        assertFalse(evaluatorRegistry.supports(CredentialFormat.LDP_VC));
+        assertThrows(IllegalArgumentException.class, () -> evaluatorRegistry.getEvaluator(CredentialFormat.LDP_VC));
+    }
+}
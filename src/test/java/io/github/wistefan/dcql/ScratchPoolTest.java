@@ -0,0 +1,72 @@
+package io.github.wistefan.dcql;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScratchPoolTest {
+
+    private static final int TASKS = 10_000;
+
+    @Test
+    @DisplayName("Platform threads always get their own instance.")
+    public void testPlatformThreadInstance() {
+        AtomicInteger created = new AtomicInteger();
+        ScratchPool<StringBuilder> scratchPool = new ScratchPool<>(() -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        });
+
+        StringBuilder first = scratchPool.acquire();
+        scratchPool.release(first);
+        assertSame(first, scratchPool.acquire());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    @DisplayName("Instances are reused across virtual threads, instead of being created for every task.")
+    public void testVirtualThreadsReuseInstances() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        ScratchPool<StringBuilder> scratchPool = new ScratchPool<>(() -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        });
+
+        List<Future<Boolean>> tasks = new ArrayList<>(TASKS);
+        try (ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < TASKS; i++) {
+                tasks.add(virtualThreads.submit(() -> {
+                    StringBuilder scratch = scratchPool.acquire();
+                    try {
+                        // the instance is exclusively used by this task
+                        boolean unused = scratch.isEmpty();
+                        scratch.append("in use");
+                        scratch.setLength(0);
+                        return unused;
+                    } finally {
+                        scratchPool.release(scratch);
+                    }
+                }));
+            }
+        }
+        for (Future<Boolean> task : tasks) {
+            assertTrue(task.get());
+        }
+        assertTrue(created.get() < TASKS / 10,
+                String.format("%s tasks on virtual threads created %s instances.", TASKS, created.get()));
+    }
+
+    @Test
+    @DisplayName("A pool without capacity is rejected.")
+    public void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ScratchPool<>(StringBuilder::new, 0));
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.wistefan.dcql;
+
+import io.github.wistefan.dcql.model.ClaimsQuery;
+import io.github.wistefan.dcql.model.TrustedAuthorityQuery;
+import io.github.wistefan.dcql.model.TrustedAuthorityType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StagePlannerTest {
+
+    private static final List<Integer> CANDIDATES = IntStream.range(0, 1000).boxed().toList();
+
+    @Test
+    @DisplayName("Without statistics, meta runs before claims and trusted authorities.")
+    public void testEstimatedOrder() {
+        StagePlanner.Stage<Integer> trustStage = StagePlanner.trustedAuthorityStage(akiQuery("aki"), i -> true);
+        StagePlanner.Stage<Integer> claimStage = StagePlanner.claimsStage(claims("credentialSubject", "name"), i -> true);
+        StagePlanner.Stage<Integer> metaStage = StagePlanner.metaStage("org.iso.7367.1.mVRC", i -> true);
+
+        assertEquals(List.of(metaStage, claimStage, trustStage), new StagePlanner().plan(List.of(trustStage, claimStage, metaStage)));
+    }
+
+    @Test
+    @DisplayName("Meta and trusted authority stages only share statistics with stages of the same values.")
+    public void testStatisticsPerValues() {
+        StagePlanner stagePlanner = new StagePlanner();
+        // rejects half of the candidates
+        StagePlanner.Stage<Integer> claimStage = StagePlanner.claimsStage(claims("credentialSubject", "name"), i -> i % 2 == 0);
+        // rejects nothing
+        StagePlanner.Stage<Integer> openMeta = StagePlanner.metaStage("org.iso.7367.1.mVRC", i -> true);
+        StagePlanner.Stage<Integer> openTrust = StagePlanner.trustedAuthorityStage(akiQuery("aki", "other-aki"), i -> true);
+
+        for (int i = 0; i < 10; i++) {
+            stagePlanner.filter(List.of(openMeta, openTrust, claimStage), CANDIDATES);
+        }
+        assertEquals(List.of(claimStage, openMeta), stagePlanner.plan(List.of(openMeta, claimStage)));
+        assertEquals(List.of(claimStage, openTrust), stagePlanner.plan(List.of(openTrust, claimStage)));
+
+        // stages share their statistics through equal keys, the order of the trusted authority values does not matter
+        assertEquals(openMeta.key(), StagePlanner.metaStage("org.iso.7367.1.mVRC", i -> false).key());
+        assertEquals(openTrust.key(), StagePlanner.trustedAuthorityStage(akiQuery("other-aki", "aki"), i -> false).key());
+        assertNotEquals(openMeta.key(), StagePlanner.metaStage("org.iso.18013.5.1.mDL", i -> true).key());
+        assertNotEquals(openTrust.key(), StagePlanner.trustedAuthorityStage(akiQuery("third-aki"), i -> true).key());
+    }
+
+    @Test
+    @DisplayName("Older statistics lose weight, so that the order follows changes of the credentials.")
+    public void testStatisticsDecay() {
+        StagePlanner stagePlanner = new StagePlanner(CANDIDATES.size());
+        AtomicBoolean selective = new AtomicBoolean(true);
+        // rejects all candidates at first, none later on
+        StagePlanner.Stage<Integer> changingStage = StagePlanner.claimsStage(claims("changing"), i -> !selective.get());
+        // rejects half of the candidates
+        StagePlanner.Stage<Integer> constantStage = StagePlanner.claimsStage(claims("constant"), i -> i % 2 == 0);
+
+        for (int i = 0; i < 50; i++) {
+            stagePlanner.filter(List.of(changingStage, constantStage), CANDIDATES);
+        }
+        selective.set(false);
+        for (int i = 0; i < 10; i++) {
+            stagePlanner.filter(List.of(changingStage, constantStage), CANDIDATES);
+        }
+        // without decay, the recorded rejection rate of the changing stage would still be higher than the constant one
+        assertEquals(List.of(constantStage, changingStage), stagePlanner.plan(List.of(changingStage, constantStage)));
+    }
+
+    @Test
+    @DisplayName("Statistics have to keep at least the minimum number of samples.")
+    public void testInvalidDecay() {
+        assertThrows(IllegalArgumentException.class, () -> new StagePlanner(1));
+    }
+
+    @Test
+    @DisplayName("Stages that reject most credentials are moved to the front.")
+    public void testStatisticsReorderStages() {
+        StagePlanner stagePlanner = new StagePlanner();
+        // accepts everything
+        StagePlanner.Stage<Integer> openStage = StagePlanner.claimsStage(claims("open"), i -> true);
+        // rejects 99% of the candidates
+        StagePlanner.Stage<Integer> selectiveStage = StagePlanner.claimsStage(claims("selective", "deep", "path"), i -> i % 100 == 0);
+
+        assertEquals(List.of(openStage, selectiveStage), stagePlanner.plan(List.of(openStage, selectiveStage)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, stagePlanner.filter(List.of(openStage, selectiveStage), CANDIDATES).size());
+        }
+        assertEquals(List.of(selectiveStage, openStage), stagePlanner.plan(List.of(openStage, selectiveStage)));
+    }
+
+    @Test
+    @DisplayName("The result does not depend on the order of the stages.")
+    public void testResultIndependentOfOrder() {
+        StagePlanner stagePlanner = new StagePlanner();
+        StagePlanner.Stage<Integer> even = StagePlanner.claimsStage(claims("even"), i -> i % 2 == 0);
+        StagePlanner.Stage<Integer> third = StagePlanner.metaStage("third", i -> i % 3 == 0);
+
+        List<Integer> expected = CANDIDATES.stream().filter(i -> i % 6 == 0).toList();
+        assertEquals(expected, stagePlanner.filter(List.of(even, third), CANDIDATES));
+        assertEquals(expected, stagePlanner.filter(List.of(third, even), CANDIDATES));
+    }
+
+    @Test
+    @DisplayName("Filtering candidate positions gives the same result as filtering the candidates.")
+    public void testBitSetFilter() {
+        StagePlanner stagePlanner = new StagePlanner();
+        StagePlanner.Stage<Integer> even = StagePlanner.claimsStage(claims("even"), i -> i % 2 == 0);
+        StagePlanner.Stage<Integer> third = StagePlanner.metaStage("third", i -> i % 3 == 0);
+
+        BitSet candidates = new BitSet();
+        candidates.set(0, CANDIDATES.size());
+        BitSet filtered = stagePlanner.filter(List.of(even, third), candidates, CANDIDATES::get);
+
+        assertEquals(CANDIDATES.stream().filter(i -> i % 6 == 0).toList(), filtered.stream().boxed().toList());
+    }
+
+    @Test
+    @DisplayName("The first alternative leaving candidates is used, without modifying the given candidates.")
+    public void testBitSetFilterFirst() {
+        StagePlanner stagePlanner = new StagePlanner();
+        StagePlanner.Stage<Integer> none = StagePlanner.claimsStage(claims("none"), i -> false);
+        StagePlanner.Stage<Integer> small = StagePlanner.claimsStage(claims("small"), i -> i < 10);
+
+        BitSet candidates = new BitSet();
+        candidates.set(0, CANDIDATES.size());
+        BitSet filtered = stagePlanner.filterFirst(List.of(List.of(none), List.of(small)), candidates, CANDIDATES::get);
+
+        assertEquals(10, filtered.cardinality());
+        assertEquals(CANDIDATES.size(), candidates.cardinality());
+        assertTrue(stagePlanner.filterFirst(List.of(List.of(none)), candidates, CANDIDATES::get).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Claims sharing a path prefix are estimated by the steps of their trie.")
+    public void testSharedPrefixIsCheaper() {
+        StagePlanner.Stage<Integer> sharedPrefix = StagePlanner.claimsStage(ClaimPathTrie.compile(List.of(
+                claimsQuery("credentialSubject", "address", "street"),
+                claimsQuery("credentialSubject", "address", "city"))), i -> true);
+        StagePlanner.Stage<Integer> distinctPaths = StagePlanner.claimsStage(ClaimPathTrie.compile(List.of(
+                claimsQuery("credentialSubject", "address", "street"),
+                claimsQuery("evidence", "document", "city"))), i -> true);
+
+        assertEquals(List.of(sharedPrefix, distinctPaths), new StagePlanner().plan(List.of(distinctPaths, sharedPrefix)));
+    }
+
+    private static CompiledTrustedAuthorityQuery akiQuery(String... values) {
+        return DcqlCompiler.compile(new TrustedAuthorityQuery(TrustedAuthorityType.AKI, List.of(values)));
+    }
+
+    private static ClaimPathTrie claims(Object... path) {
+        return ClaimPathTrie.compile(List.of(claimsQuery(path)));
+    }
+
+    private static CompiledClaimsQuery claimsQuery(Object... path) {
+        return DcqlCompiler.compile(new ClaimsQuery(null, List.of(path), null));
+    }
+}
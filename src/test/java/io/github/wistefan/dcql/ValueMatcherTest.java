@@ -0,0 +1,73 @@
+package io.github.wistefan.dcql;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueMatcherTest {
+
+    @ParameterizedTest
+    @MethodSource("matchArgs")
+    public void testMatches(List<Object> values, Object claim, boolean expectedResult) {
+        assertEquals(expectedResult, ValueMatcher.of(values).matches(claim));
+    }
+
+    @Test
+    @DisplayName("Without values, every claim is accepted.")
+    public void testEmptyValuesMatchAny() {
+        assertSame(ValueMatcher.ANY, ValueMatcher.of(null));
+        assertSame(ValueMatcher.ANY, ValueMatcher.of(List.of()));
+        assertTrue(ValueMatcher.ANY.matches("anything"));
+    }
+
+    @Test
+    @DisplayName("Large value lists are matched.")
+    public void testLargeValueList() {
+        List<Object> values = new ArrayList<>();
+        IntStream.range(0, 10_000).forEach(i -> values.add("code-" + i));
+        IntStream.range(0, 10_000).forEach(i -> values.add((long) i * 7));
+        ValueMatcher valueMatcher = ValueMatcher.of(values);
+
+        assertTrue(valueMatcher.matches("code-9999"));
+        assertFalse(valueMatcher.matches("code-10000"));
+        assertTrue(valueMatcher.matches(69993));
+        assertFalse(valueMatcher.matches(69994));
+    }
+
+    public static Stream<Arguments> matchArgs() {
+        return Stream.of(
+                Arguments.of(List.of("DE", "FR"), "DE", true),
+                Arguments.of(List.of("DE", "FR"), "IT", false),
+                Arguments.of(List.of(1L), 1, true),
+                Arguments.of(List.of(1), 1L, true),
+                Arguments.of(List.of(1), 1.0, true),
+                Arguments.of(List.of(1.0), 1, true),
+                Arguments.of(List.of(1), 2, false),
+                Arguments.of(List.of(1.5), 1.5, true),
+                Arguments.of(List.of(1.5), 1.5f, true),
+                Arguments.of(List.of(1.5), 1, false),
+                Arguments.of(List.of(BigInteger.TEN), 10, true),
+                Arguments.of(List.of(10), new BigDecimal("10.00"), true),
+                Arguments.of(List.of(new BigInteger("123456789012345678901234567890")), new BigInteger("123456789012345678901234567890"), true),
+                Arguments.of(List.of(true), true, true),
+                Arguments.of(List.of(true), false, false),
+                Arguments.of(List.of(false), false, true),
+                Arguments.of(List.of("true"), true, false),
+                Arguments.of(List.of(1), "1", false),
+                Arguments.of(List.of("1"), 1, false));
+    }
+}
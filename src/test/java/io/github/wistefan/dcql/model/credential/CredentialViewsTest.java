@@ -0,0 +1,109 @@
+package io.github.wistefan.dcql.model.credential;
+
+import io.github.wistefan.dcql.query.DcqlTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialViewsTest {
+
+    @Test
+    @DisplayName("Derived views of jwt credentials are computed once and immutable.")
+    public void testJwtCredentialViews() {
+        JwtCredential jwtCredential = new JwtCredential(null, Map.of(), Map.of("vc", Map.of(
+                "type", List.of("VerifiableCredential", "UniversityDegreeCredential"),
+                "vct", "https://credentials.example.com/degree")), null);
+
+        assertSame(jwtCredential.getPayload(), jwtCredential.getPayload());
+        assertSame(jwtCredential.getType(), jwtCredential.getType());
+        assertSame(jwtCredential.getTypeSet(), jwtCredential.getTypeSet());
+        assertSame(jwtCredential.getX5Chain(), jwtCredential.getX5Chain());
+        assertEquals(Set.of("VerifiableCredential", "UniversityDegreeCredential"), jwtCredential.getTypeSet());
+        assertEquals("https://credentials.example.com/degree", jwtCredential.getVct());
+        assertThrows(UnsupportedOperationException.class, () -> jwtCredential.getTypeSet().add("Other"));
+    }
+
+    @Test
+    @DisplayName("Invalid contents keep failing on every access.")
+    public void testInvalidContentsNotCached() {
+        JwtCredential jwtCredential = new JwtCredential(null, Map.of("x5c", List.of("invalid")), Map.of("type", List.of(1)), null);
+        LdpCredential ldpCredential = new LdpCredential(null, Map.of());
+        MDocCredential mDocCredential = new MDocCredential(null, null, Map.of());
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalArgumentException.class, jwtCredential::getType);
+            assertThrows(IllegalArgumentException.class, jwtCredential::getVct);
+            assertThrows(IllegalArgumentException.class, jwtCredential::getX5Chain);
+            assertThrows(IllegalArgumentException.class, ldpCredential::getTypeSet);
+            assertThrows(IllegalArgumentException.class, mDocCredential::getDocType);
+        }
+    }
+
+    @Test
+    @DisplayName("Ldp and mdoc credentials cache their types.")
+    public void testLdpAndMDocViews() {
+        LdpCredential ldpCredential = new LdpCredential(null, Map.of("type", "VerifiableCredential"));
+        MDocCredential mDocCredential = new MDocCredential(null, null, Map.of("docType", "org.iso.18013.5.1.mDL"));
+
+        assertSame(ldpCredential.getTypeSet(), ldpCredential.getTypeSet());
+        assertEquals(Set.of("VerifiableCredential"), ldpCredential.getTypeSet());
+        assertEquals("org.iso.18013.5.1.mDL", mDocCredential.getDocType());
+    }
+
+    @Test
+    @DisplayName("Disclosures of sd-jwt credentials are indexed by their hash.")
+    public void testDisclosuresByHash() {
+        Disclosure givenName = DcqlTest.getDisclosure("salt-1", "given_name", "Arthur");
+        Disclosure familyName = DcqlTest.getDisclosure("salt-2", "family_name", "Dent");
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of(), null), List.of(givenName, familyName));
+
+        assertEquals(Map.of(givenName.getSdHash(), givenName, familyName.getSdHash(), familyName), sdJwtCredential.getDisclosuresByHash());
+        assertSame(sdJwtCredential.getDisclosuresByHash(), sdJwtCredential.getDisclosuresByHash());
+        assertTrue(new SdJwtCredential(null, null, null).getDisclosuresByHash().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Revealed objects resolve the original entries first, then the disclosures.")
+    public void testRevealedObject() {
+        Disclosure givenName = DcqlTest.getDisclosure("salt-1", "given_name", "Arthur");
+        Disclosure shadowed = DcqlTest.getDisclosure("salt-2", "family_name", "Prefect");
+        Map<String, Object> subject = Map.of("_sd", List.of(givenName.getSdHash(), shadowed.getSdHash()), "family_name", "Dent");
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of("credentialSubject", subject), null),
+                List.of(givenName, shadowed));
+
+        Map<String, Object> revealed = sdJwtCredential.reveal(subject);
+
+        assertSame(revealed, sdJwtCredential.reveal(subject));
+        assertEquals(Map.of("given_name", "Arthur", "family_name", "Dent"), revealed);
+        assertSame(givenName, ((RevealedObject) revealed).getDisclosure("given_name"));
+        assertNull(((RevealedObject) revealed).getDisclosure("family_name"));
+        assertFalse(revealed.containsKey("_sd"));
+        assertThrows(UnsupportedOperationException.class, () -> revealed.put("other", "value"));
+        assertNull(sdJwtCredential.reveal(Map.of("_sd", "invalid")));
+    }
+
+    @Test
+    @DisplayName("Revealed arrays replace the element digests by the disclosed values and drop undisclosed elements.")
+    public void testRevealedArray() {
+        Disclosure british = DcqlTest.getArrayElementDisclosure("salt-1", "British");
+        Disclosure betelgeusian = DcqlTest.getArrayElementDisclosure("salt-2", "Betelgeusian");
+        List<Object> nationalities = List.of(Map.of("...", british.getSdHash()), "Earthling", Map.of("...", betelgeusian.getSdHash()));
+        SdJwtCredential sdJwtCredential = new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of("nationalities", nationalities), null),
+                List.of(british));
+
+        List<?> revealed = sdJwtCredential.reveal(nationalities);
+
+        assertSame(revealed, sdJwtCredential.reveal(nationalities));
+        assertEquals(List.of("British", "Earthling"), revealed);
+        assertSame(british, ((RevealedArray) revealed).getDisclosure(0));
+        assertNull(((RevealedArray) revealed).getDisclosure(1));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) revealed).add("other"));
+        List<Object> plain = List.of("British");
+        assertSame(plain, sdJwtCredential.reveal(plain));
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.wistefan.dcql.model.credential;
+
+import io.github.wistefan.dcql.EvaluationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisclosureHasherTest {
+
+    // example disclosure from the SD-JWT specification
+    private static final String ENCODED_DISCLOSURE = "WyI2cU1RdlJMNWhhaiIsICJmYW1pbHlfbmFtZSIsICJNw7ZiaXVzIl0";
+
+    @ParameterizedTest
+    @MethodSource("hashArgs")
+    public void testHash(String sdAlgorithm, String expectedHash) {
+        assertEquals(expectedHash, DisclosureHasher.hash(ENCODED_DISCLOSURE, sdAlgorithm));
+        assertEquals(expectedHash, new Disclosure("6qMQvRL5haj", "family_name", "Möbius", ENCODED_DISCLOSURE, sdAlgorithm).getSdHash());
+    }
+
+    @Test
+    @DisplayName("Unsupported algorithms are rejected when creating the disclosure.")
+    public void testUnsupportedAlgorithm() {
+        assertFalse(DisclosureHasher.isSupported("md5"));
+        assertThrows(EvaluationException.class, () -> DisclosureHasher.hash(ENCODED_DISCLOSURE, "md5"));
+        assertThrows(EvaluationException.class, () -> new Disclosure("salt", "claim", "value", ENCODED_DISCLOSURE, "md5"));
+    }
+
+    @Test
+    @DisplayName("All disclosures of the credentials are hashed in bulk.")
+    public void testHashAll() {
+        List<SdJwtCredential> credentials = IntStream.range(0, 100)
+                .mapToObj(i -> new SdJwtCredential(null, new JwtCredential(null, Map.of(), Map.of(), null),
+                        List.of(new Disclosure("salt", "claim", i, ENCODED_DISCLOSURE, "sha-256"),
+                                new Disclosure("salt", "claim", i, ENCODED_DISCLOSURE, "sha-512"),
+                                new Disclosure("salt", "claim", i, ENCODED_DISCLOSURE, "sha-384"))))
+                .toList();
+
+        DisclosureHasher.hashAll(credentials);
+
+        credentials.forEach(credential -> credential.getDisclosures().forEach(disclosure ->
+                assertEquals(DisclosureHasher.hash(ENCODED_DISCLOSURE, disclosure.getSdAlgorithm()), disclosure.getSdHash())));
+    }
+
+    public static Stream<Arguments> hashArgs() {
+        return Stream.of(
+                Arguments.of("sha-256", "uutlBuYeMDyjLLTpf6Jxi7yNkEF35jdyWMn9U7b_RYY"),
+                Arguments.of("SHA-256", "uutlBuYeMDyjLLTpf6Jxi7yNkEF35jdyWMn9U7b_RYY"),
+                Arguments.of("sha-384", "bKpgpvP2Rzd_RRtfkMakGROzp21yLP1LEqTO2I9xtoJxMFJ17TZ-qRsvkF-66uPP"),
+                Arguments.of("sha-512", "-EP9kyhJUA0AS3t1j-IHG3Seu5Qfu1vELCOdswgfpy-S7LYykfnr3K-53p_53MjlVqlgt5-aPHc3xPSI5N1u5A"));
+    }
+}
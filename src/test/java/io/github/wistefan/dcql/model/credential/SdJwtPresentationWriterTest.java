@@ -0,0 +1,87 @@
+package io.github.wistefan.dcql.model.credential;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SdJwtPresentationWriterTest {
+
+    private static final Disclosure FIRST = new Disclosure("salt", "given_name", "Arthur", "Zmlyc3Q", "sha-256");
+    private static final Disclosure SECOND = new Disclosure("salt", "family_name", "Dent", "c2Vjb25k", "sha-256");
+    private static final SdJwtCredential CREDENTIAL = new SdJwtCredential("aGVhZGVy.cGF5bG9hZA.c2ln~Zmlyc3Q~c2Vjb25k~a2I",
+            new JwtCredential(null, Map.of(), Map.of(), null), List.of(FIRST, SECOND));
+
+    @Test
+    @DisplayName("Only the selected disclosures are written, to all kinds of targets.")
+    public void testWriteSelectedDisclosures() throws IOException {
+        SdJwtCredential selected = CREDENTIAL.withDisclosures(List.of(SECOND));
+        String expected = "aGVhZGVy.cGF5bG9hZA.c2ln~c2Vjb25k~";
+
+        assertEquals(expected, selected.getRaw());
+        assertEquals(expected.length(), SdJwtPresentationWriter.length(selected));
+
+        StringBuilder stringBuilder = new StringBuilder();
+        SdJwtPresentationWriter.write(selected, stringBuilder);
+        assertEquals(expected, stringBuilder.toString());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SdJwtPresentationWriter.write(selected, outputStream);
+        assertEquals(expected, outputStream.toString(StandardCharsets.US_ASCII));
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(64);
+        SdJwtPresentationWriter.write(selected, byteBuffer);
+        assertEquals(expected, new String(byteBuffer.array(), 0, byteBuffer.position(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("The presentation of all disclosures drops the key binding.")
+    public void testWriteAllDisclosures() {
+        assertEquals("aGVhZGVy.cGF5bG9hZA.c2ln~Zmlyc3Q~c2Vjb25k~", CREDENTIAL.getRaw());
+        assertEquals("aGVhZGVy.cGF5bG9hZA.c2ln~", CREDENTIAL.withDisclosures(List.of()).getRaw());
+        assertEquals("aGVhZGVy.cGF5bG9hZA.c2ln~", new SdJwtCredential("aGVhZGVy.cGF5bG9hZA.c2ln", null, List.of()).getRaw());
+    }
+
+    @Test
+    @DisplayName("Large presentations are written to streams in chunks.")
+    public void testWriteLargePresentation() throws IOException {
+        String jwt = "a".repeat(5000);
+        SdJwtCredential credential = new SdJwtCredential(jwt + "~", null, List.of(FIRST));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        SdJwtPresentationWriter.write(credential, outputStream);
+
+        assertEquals(jwt + "~Zmlyc3Q~", outputStream.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("Nothing is written to buffers that are too small.")
+    public void testBufferTooSmall() {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(10);
+
+        assertThrows(BufferOverflowException.class, () -> SdJwtPresentationWriter.write(CREDENTIAL, byteBuffer));
+        assertEquals(0, byteBuffer.position());
+        assertNull(new SdJwtCredential(null, null, List.of()).getRaw());
+    }
+
+    @Test
+    @DisplayName("Presentations with non-ASCII characters are rejected, without changing the buffer.")
+    public void testNonAsciiLeavesBufferUnchanged() {
+        Disclosure nonAscii = new Disclosure("salt", "given_name", "Zaphod", "WmFwaG9k\u00e4", "sha-256");
+        SdJwtCredential credential = CREDENTIAL.withDisclosures(List.of(FIRST, nonAscii));
+        ByteBuffer byteBuffer = ByteBuffer.allocate(64);
+        byteBuffer.put((byte) 'x');
+
+        assertThrows(IllegalArgumentException.class, () -> SdJwtPresentationWriter.write(credential, byteBuffer));
+        assertEquals(1, byteBuffer.position());
+        assertArrayEquals(ByteBuffer.allocate(64).put((byte) 'x').array(), byteBuffer.array());
+    }
+}
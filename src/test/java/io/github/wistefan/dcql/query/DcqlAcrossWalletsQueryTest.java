@@ -0,0 +1,177 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.CompiledDcqlQuery;
+import io.github.wistefan.dcql.CredentialWallet;
+import io.github.wistefan.dcql.QueryResult;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlAcrossWalletsQueryTest extends DcqlTest {
+
+    private static final String QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "holder",
+                  "format": "mso_mdoc",
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"] } ]
+                }
+              ]
+            }
+            """;
+
+    @Test
+    @DisplayName("Every wallet is evaluated and its result is handed to the sink.")
+    void everyWalletIsEvaluated() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class);
+        Map<CredentialWallet, QueryResult> results = new ConcurrentHashMap<>();
+
+        dcqlEvaluator.evaluateAcrossWallets(query, new HolderWallets(500, new AtomicInteger()), results::put);
+
+        assertEquals(500, results.size());
+        results.forEach((wallet, result) -> assertEquals(dcqlEvaluator.evaluateDCQLQuery(query, wallet), result));
+        // every second holder has no mvrc
+        assertEquals(250, results.values().stream().filter(QueryResult::success).count());
+    }
+
+    @Test
+    @DisplayName("Wallets are only pulled from the iterable while less than the maximum are in flight.")
+    void walletsInFlightAreBounded() throws JsonProcessingException {
+        CompiledDcqlQuery query = dcqlEvaluator.compile(OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class));
+        AtomicInteger completed = new AtomicInteger();
+        HolderWallets wallets = new HolderWallets(1000, completed);
+        // every evaluation waits for 7 others, thus the maximum has to be reached, but the barrier would break if the
+        // evaluations were not started in groups of exactly 8
+        CyclicBarrier allInFlight = new CyclicBarrier(8);
+
+        dcqlEvaluator.evaluateAcrossWallets(query, wallets, (wallet, result) -> {
+            try {
+                allInFlight.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new IllegalStateException("Not all wallets were in flight at the same time.", e);
+            }
+            completed.incrementAndGet();
+        }, 8);
+
+        assertEquals(1000, completed.get());
+        assertEquals(8, wallets.maxInFlight.get(), "Exactly 8 wallets should be in flight.");
+    }
+
+    @Test
+    @DisplayName("A failing sink stops the evaluation and its failure is rethrown.")
+    void failingSinkIsRethrown() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class);
+        HolderWallets wallets = new HolderWallets(1000, new AtomicInteger());
+
+        assertThrows(IllegalStateException.class, () -> dcqlEvaluator.evaluateAcrossWallets(query, wallets, (wallet, result) -> {
+            throw new IllegalStateException("Sink failed.");
+        }));
+        assertTrue(wallets.pulled.get() < 1000, "No further wallets should be pulled after the failure.");
+    }
+
+    @Test
+    @DisplayName("A failing iterable is rethrown after the evaluations already started are finished.")
+    void failingIterableWaitsForStartedEvaluations() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class);
+        Iterator<CredentialWallet> holderWallets = new HolderWallets(1000, new AtomicInteger()).iterator();
+        Iterable<CredentialWallet> failingWallets = () -> new Iterator<>() {
+            private int pulled;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public CredentialWallet next() {
+                if (++pulled > 20) {
+                    throw new IllegalStateException("Loading the wallet failed.");
+                }
+                return holderWallets.next();
+            }
+        };
+        AtomicInteger entered = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        // the evaluations are only released once the caller waits for them, after the iterable failed
+        CountDownLatch release = new CountDownLatch(1);
+        Thread caller = Thread.currentThread();
+        Thread releaser = new Thread(() -> {
+            while (caller.getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+        });
+        releaser.setDaemon(true);
+
+        assertThrows(IllegalStateException.class, () -> dcqlEvaluator.evaluateAcrossWallets(query, failingWallets, (wallet, result) -> {
+            if (entered.incrementAndGet() == 20) {
+                releaser.start();
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            completed.incrementAndGet();
+        }));
+        assertEquals(20, completed.get(), "All wallets pulled before the failure should be evaluated.");
+    }
+
+    /**
+     * Creates the wallets lazily, while tracking how many of them are pulled but not yet completed.
+     */
+    private static class HolderWallets implements Iterable<CredentialWallet> {
+
+        private final int count;
+        private final AtomicInteger completed;
+        private final AtomicInteger pulled = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private HolderWallets(int count, AtomicInteger completed) {
+            this.count = count;
+            this.completed = completed;
+        }
+
+        @Override
+        public Iterator<CredentialWallet> iterator() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return pulled.get() < count;
+                }
+
+                @Override
+                public CredentialWallet next() {
+                    int holder = pulled.incrementAndGet();
+                    maxInFlight.accumulateAndGet(holder - completed.get(), Math::max);
+                    return holder % 2 == 0 ? new CredentialWallet(List.of(mvrc(holder))) : new CredentialWallet(List.of());
+                }
+            };
+        }
+    }
+
+    private static Credential mvrc(int holder) {
+        return new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+                "docType", "org.iso.7367.1.mVRC",
+                "namespaces", Map.of("org.iso.7367.1", Map.of("vehicle_holder", "Holder " + holder))
+        )));
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.*;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlAsyncQueryTest extends DcqlTest {
+
+    private static final String QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "holder",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.7367.1.mVRC" },
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer"] } ]
+                },
+                {
+                  "id": "mdl",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.18013.5.1.mDL" }
+                }
+              ]
+            }
+            """;
+
+    private static final String SET_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } },
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } }
+              ],
+              "credential_sets": [
+                { "purpose": "first", "options": [["pid"], ["mvrc"]] },
+                { "purpose": "second", "options": [["mdl"]] }
+              ]
+            }
+            """;
+
+    // the mdoc query is not fulfilled, thus the ldp query is not needed anymore
+    private static final String UNFULFILLED_QUERY = """
+            {
+              "credentials": [
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } },
+                { "id": "ldp", "format": "ldp_vc" }
+              ]
+            }
+            """;
+
+    private static final String INVALID_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "claims": [ { "namespace": "org.iso.7367.1" } ] }
+              ]
+            }
+            """;
+
+    @Test
+    @DisplayName("Asynchronous evaluations return the same results as the blocking evaluation.")
+    void asyncEqualsBlocking() throws Exception {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC, MDOC_MDL));
+        for (String query : List.of(QUERY, SET_QUERY)) {
+            DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(query, DcqlQuery.class);
+            QueryResult expected = dcqlEvaluator.evaluateDCQLQuery(dcqlQuery, wallet);
+
+            assertTrue(expected.success());
+            assertEquals(expected, dcqlEvaluator.evaluateAsync(dcqlQuery, wallet).get());
+            assertEquals(expected, dcqlEvaluator.evaluateStructured(dcqlQuery, wallet));
+        }
+    }
+
+    @Test
+    @DisplayName("Many concurrent asynchronous evaluations can be in flight.")
+    void concurrentAsyncEvaluations() throws Exception {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC, MDOC_MDL));
+        DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class);
+        List<CompletableFuture<QueryResult>> evaluations = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            evaluations.add(dcqlEvaluator.evaluateAsync(dcqlQuery, wallet));
+        }
+        for (CompletableFuture<QueryResult> evaluation : evaluations) {
+            assertEquals(List.of(MDOC_MVRC, MDOC_MDL), evaluation.get().credentials().get("credentials"));
+        }
+    }
+
+    @Test
+    @DisplayName("Unfulfilled queries complete with an unsuccessful result.")
+    void asyncUnfulfilled() throws Exception {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC));
+        DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class);
+
+        assertFalse(dcqlEvaluator.evaluateAsync(dcqlQuery, wallet).get().success());
+    }
+
+    @Test
+    @DisplayName("Invalid queries complete the future exceptionally.")
+    void asyncInvalidQuery() throws JsonProcessingException {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC));
+        DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(INVALID_QUERY, DcqlQuery.class);
+
+        ExecutionException executionException = assertThrows(ExecutionException.class,
+                () -> dcqlEvaluator.evaluateAsync(dcqlQuery, wallet).get());
+        assertInstanceOf(IllegalArgumentException.class, executionException.getCause());
+    }
+
+    @Test
+    @DisplayName("Evaluations that are not needed anymore are interrupted, instead of being waited for.")
+    void structuredInterruptsUnneededEvaluations() throws JsonProcessingException {
+        CountDownLatch ldpStarted = new CountDownLatch(1);
+        CountDownLatch ldpInterrupted = new CountDownLatch(1);
+        DCQLEvaluator evaluator = new DCQLEvaluator(List.of(
+                new MDocCredentialEvaluator() {
+                    @Override
+                    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+                        // only fail once the ldp evaluation is running
+                        await(ldpStarted);
+                        return super.evaluate(credentialQuery, wallet);
+                    }
+                },
+                new LdpCredentialEvaluator() {
+                    @Override
+                    public List<Credential> evaluate(CompiledCredentialQuery credentialQuery, CredentialWallet wallet) {
+                        ldpStarted.countDown();
+                        try {
+                            // never finishes on its own
+                            new CountDownLatch(1).await();
+                            return List.of();
+                        } catch (InterruptedException e) {
+                            ldpInterrupted.countDown();
+                            throw new EvaluationException("Interrupted.", e);
+                        }
+                    }
+                }));
+        DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(UNFULFILLED_QUERY, DcqlQuery.class);
+
+        QueryResult queryResult = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> evaluator.evaluateStructured(dcqlQuery, new CredentialWallet(List.of(MDOC_MVRC))));
+
+        assertFalse(queryResult.success());
+        assertEquals(0, ldpInterrupted.getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationException("Interrupted.", e);
+        }
+    }
+}
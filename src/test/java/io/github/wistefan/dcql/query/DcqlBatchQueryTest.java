@@ -0,0 +1,130 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.CredentialWallet;
+import io.github.wistefan.dcql.EvaluationStatistics;
+import io.github.wistefan.dcql.QueryResult;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlBatchQueryTest extends DcqlTest {
+
+    private static final String HOLDER_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "holder",
+                  "format": "mso_mdoc",
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer"] } ]
+                }
+              ]
+            }
+            """;
+
+    // same credential query as the HOLDER_QUERY, with another id
+    private static final String VEHICLE_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "vehicle",
+                  "format": "mso_mdoc",
+                  "multiple": true,
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer"] } ]
+                },
+                {
+                  "id": "mdl",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.18013.5.1.mDL" }
+                }
+              ]
+            }
+            """;
+
+    private static final String PID_QUERY = """
+            {
+              "credentials": [
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } }
+              ]
+            }
+            """;
+
+    // the HOLDER_QUERY with claim ids, another claim order and the values in another order and representation
+    private static final String REORDERED_HOLDER_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "reordered",
+                  "format": "mso_mdoc",
+                  "claims": [
+                    { "id": "vehicle_holder", "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer", 1.0] },
+                    { "id": "holder", "path": ["org.iso.7367.1", "vehicle_holder"], "values": [1, "Martin Auer"] }
+                  ]
+                }
+              ]
+            }
+            """;
+
+    @Test
+    @DisplayName("Every query of the batch gets the result of its individual evaluation.")
+    void batchEqualsIndividualEvaluation() throws JsonProcessingException {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC, MDOC_MDL));
+        List<DcqlQuery> queries = List.of(
+                OBJECT_MAPPER.readValue(HOLDER_QUERY, DcqlQuery.class),
+                OBJECT_MAPPER.readValue(VEHICLE_QUERY, DcqlQuery.class),
+                OBJECT_MAPPER.readValue(PID_QUERY, DcqlQuery.class));
+
+        List<QueryResult> batchResults = dcqlEvaluator.evaluateBatch(queries, wallet);
+
+        assertEquals(queries.stream().map(query -> dcqlEvaluator.evaluateDCQLQuery(query, wallet)).toList(), batchResults);
+        assertEquals(List.of(true, true, false), batchResults.stream().map(QueryResult::success).toList());
+    }
+
+    @Test
+    @DisplayName("Identical credential queries are evaluated once per batch, independent of their id.")
+    void identicalCredentialQueriesAreShared() throws JsonProcessingException {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC, MDOC_MDL));
+        List<DcqlQuery> queries = List.of(
+                OBJECT_MAPPER.readValue(HOLDER_QUERY, DcqlQuery.class),
+                OBJECT_MAPPER.readValue(VEHICLE_QUERY, DcqlQuery.class),
+                OBJECT_MAPPER.readValue(HOLDER_QUERY, DcqlQuery.class));
+
+        dcqlEvaluator.evaluateBatch(queries, wallet);
+
+        EvaluationStatistics statistics = dcqlEvaluator.getStatistics();
+        // holder/vehicle and mdl are evaluated, the other two references are shared
+        assertEquals(2, statistics.getCredentialQueryEvaluations());
+        assertEquals(2, statistics.getCredentialQueryCacheHits());
+    }
+
+    @Test
+    @DisplayName("Credential queries only differing in claim ids, claim order and value representation are evaluated once.")
+    void normalizedCredentialQueriesAreShared() throws JsonProcessingException {
+        CredentialWallet wallet = new CredentialWallet(List.of(MDOC_MVRC, MDOC_MDL));
+        String otherValues = REORDERED_HOLDER_QUERY.replace("\"Martin Auer\", 1.0", "1, \"Martin Auer\"");
+        List<DcqlQuery> queries = List.of(
+                OBJECT_MAPPER.readValue(REORDERED_HOLDER_QUERY, DcqlQuery.class),
+                OBJECT_MAPPER.readValue(otherValues, DcqlQuery.class));
+
+        List<QueryResult> batchResults = dcqlEvaluator.evaluateBatch(queries, wallet);
+
+        EvaluationStatistics statistics = dcqlEvaluator.getStatistics();
+        assertEquals(1, statistics.getCredentialQueryEvaluations());
+        assertEquals(1, statistics.getCredentialQueryCacheHits());
+        assertEquals(queries.stream().map(query -> dcqlEvaluator.evaluateDCQLQuery(query, wallet)).toList(), batchResults);
+    }
+
+    @Test
+    @DisplayName("An empty batch returns no results.")
+    void emptyBatch() {
+        assertTrue(dcqlEvaluator.evaluateBatch(List.of(), new CredentialWallet(List.of(MDOC_MVRC))).isEmpty());
+    }
+}
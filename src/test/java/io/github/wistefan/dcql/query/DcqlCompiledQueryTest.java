@@ -0,0 +1,156 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.CompiledCredentialQuery;
+import io.github.wistefan.dcql.CompiledDcqlQuery;
+import io.github.wistefan.dcql.QueryResult;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.CredentialQuery;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlCompiledQueryTest extends DcqlTest {
+
+    private static final String MDOC_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "my_credential",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.7367.1.mVRC" },
+                  "claims": [
+                    { "path": ["org.iso.7367.1", "vehicle_holder"] },
+                    { "namespace": "org.iso.18013.5.1", "claim_name": "first_name" }
+                  ]
+                }
+              ]
+            }
+            """;
+
+    private static final String SET_QUERY_UNKNOWN_ID = """
+            {
+              "credentials": [
+                { "id": "my_credential", "format": "mso_mdoc" }
+              ],
+              "credential_sets": [
+                { "options": [["my_credential"], ["unknown"]] }
+              ]
+            }
+            """;
+
+    private static final String CLAIM_SET_UNKNOWN_ID = """
+            {
+              "credentials": [
+                {
+                  "id": "my_credential",
+                  "format": "mso_mdoc",
+                  "claims": [ { "id": "a", "path": ["org.iso.7367.1", "vehicle_holder"] } ],
+                  "claim_sets": [ ["a", "b"] ]
+                }
+              ]
+            }
+            """;
+
+    private static final String JWT_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "degree",
+                  "format": "jwt_vc_json",
+                  "meta": { "type_values": [["UniversityDegreeCredential"]] },
+                  "claims": [ { "path": ["credentialSubject", "degree"], "values": ["BSc"] } ]
+                }
+              ]
+            }
+            """;
+
+    private static final Credential JWT_DEGREE = new Credential(CredentialFormat.JWT_VC_JSON, new JwtCredential(null, Map.of(), Map.of(
+            "vc", Map.of(
+                    "type", List.of("VerifiableCredential", "UniversityDegreeCredential"),
+                    "credentialSubject", Map.of("degree", "BSc")))
+            , null));
+
+    private static final Credential MDOC_MVRC_WITH_NAME = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of(
+                    "org.iso.7367.1", Map.of("vehicle_holder", "Martin Auer"),
+                    "org.iso.18013.5.1", Map.of("first_name", "Martin")
+            )
+    )));
+
+    private static final Credential MDOC_OTHER = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of("org.iso.7367.1", Map.of("vehicle_holder", "Martin Auer"))
+    )));
+
+    @Test
+    @DisplayName("A compiled query can be evaluated multiple times.")
+    void compiledQueryIsReusable() throws JsonProcessingException {
+        CompiledDcqlQuery compiledQuery = dcqlEvaluator.compile(OBJECT_MAPPER.readValue(MDOC_QUERY, DcqlQuery.class));
+
+        for (int i = 0; i < 3; i++) {
+            QueryResult queryResult = dcqlEvaluator.evaluate(compiledQuery, List.of(MDOC_OTHER, MDOC_MVRC_WITH_NAME));
+            assertTrue(queryResult.success());
+            assertEquals(List.of(MDOC_MVRC_WITH_NAME), queryResult.credentials().get("credentials"));
+        }
+        assertFalse(dcqlEvaluator.evaluate(compiledQuery, List.of(MDOC_OTHER)).success());
+    }
+
+    @Test
+    @DisplayName("Compiling does not modify the original query.")
+    void compilingDoesNotModifyTheQuery() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(MDOC_QUERY, DcqlQuery.class);
+        DcqlQuery original = OBJECT_MAPPER.readValue(MDOC_QUERY, DcqlQuery.class);
+
+        dcqlEvaluator.compile(query);
+        dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC_WITH_NAME));
+
+        assertEquals(original, query);
+        assertTrue(dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC_WITH_NAME)).success());
+    }
+
+    @Test
+    @DisplayName("Changing the query after compiling does not affect the compiled query.")
+    @SuppressWarnings("unchecked")
+    void changesAfterCompilingAreIgnored() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(JWT_QUERY, DcqlQuery.class);
+        CompiledDcqlQuery compiledQuery = dcqlEvaluator.compile(query);
+        CredentialQuery credentialQuery = query.getCredentials().get(0);
+
+        ((List<List<String>>) credentialQuery.getMeta().get("type_values")).get(0).add("MembershipCredential");
+        credentialQuery.getClaims().get(0).getValues().set(0, "MSc");
+        credentialQuery.getClaims().get(0).getPath().set(1, "title");
+
+        assertEquals(List.of(JWT_DEGREE), dcqlEvaluator.evaluate(compiledQuery, List.of(JWT_DEGREE)).credentials().get("credentials"));
+        assertFalse(dcqlEvaluator.evaluateDCQLQuery(query, List.of(JWT_DEGREE)).success());
+
+        // the original query is only handed out as copy
+        CompiledCredentialQuery compiledCredentialQuery = compiledQuery.getCredentialQueries().get(0);
+        compiledCredentialQuery.getCredentialQuery().setId("changed");
+        assertEquals("degree", compiledCredentialQuery.getCredentialQuery().getId());
+        assertThrows(UnsupportedOperationException.class, () -> compiledCredentialQuery.getCredentialQuery().getClaims().add(null));
+    }
+
+    @Test
+    @DisplayName("Unknown credential query ids are rejected at compile time.")
+    void unknownCredentialQueryIdIsRejected() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(SET_QUERY_UNKNOWN_ID, DcqlQuery.class);
+        assertThrows(IllegalArgumentException.class, () -> dcqlEvaluator.compile(query));
+    }
+
+    @Test
+    @DisplayName("Unknown claim ids are rejected at compile time.")
+    void unknownClaimIdIsRejected() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(CLAIM_SET_UNKNOWN_ID, DcqlQuery.class);
+        assertThrows(IllegalArgumentException.class, () -> dcqlEvaluator.compile(query));
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.*;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlCostOrderedQueryTest extends DcqlTest {
+
+    private static final String QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "holder",
+                  "format": "mso_mdoc",
+                  "claims": [
+                    { "path": ["org.iso.7367.1", "vehicle_holder"] },
+                    { "path": ["org.iso.7367.1", "registration_number"] },
+                    { "path": ["org.iso.7367.1", "issue_date"] }
+                  ]
+                },
+                {
+                  "id": "mdl",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.18013.5.1.mDL" }
+                }
+              ]
+            }
+            """;
+
+    private static final Credential MDOC_MVRC_REGISTERED = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of("org.iso.7367.1", Map.of(
+                    "vehicle_holder", "Martin Auer",
+                    "registration_number", "HH-MA-42",
+                    "issue_date", "2024-01-01"))
+    )));
+
+    @BeforeEach
+    @Override
+    public void setUp() {
+        dcqlEvaluator = new DCQLEvaluator(List.of(new MDocCredentialEvaluator()),
+                EvaluationOptions.DEFAULT.withCostOrdered(true));
+    }
+
+    @Test
+    @DisplayName("Queries are evaluated by their estimated cost.")
+    void queriesAreOrderedByCost() throws JsonProcessingException {
+        CompiledDcqlQuery compiledQuery = dcqlEvaluator.compile(OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class));
+
+        assertEquals(List.of("mdl", "holder"), compiledQuery.getCredentialQueriesByCost()
+                .stream()
+                .map(CompiledCredentialQuery::getId)
+                .toList());
+    }
+
+    @Test
+    @DisplayName("Results are returned in declaration order.")
+    void resultsKeepDeclarationOrder() throws JsonProcessingException {
+        QueryResult queryResult = dcqlEvaluator.evaluateDCQLQuery(OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class), List.of(MDOC_MDL, MDOC_MVRC_REGISTERED));
+
+        assertTrue(queryResult.success());
+        assertEquals(List.of(MDOC_MVRC_REGISTERED, MDOC_MDL), queryResult.credentials().get("credentials"));
+    }
+
+    @Test
+    @DisplayName("Evaluation stops at the cheapest unsatisfiable query.")
+    void stopsAtCheapestUnsatisfiableQuery() throws JsonProcessingException {
+        QueryResult queryResult = dcqlEvaluator.evaluateDCQLQuery(OBJECT_MAPPER.readValue(QUERY, DcqlQuery.class), List.of(MDOC_MVRC_REGISTERED));
+
+        assertFalse(queryResult.success());
+        assertEquals(1, dcqlEvaluator.getStatistics().getCredentialQueryEvaluations());
+    }
+}
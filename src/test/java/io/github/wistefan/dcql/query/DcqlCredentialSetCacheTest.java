@@ -0,0 +1,64 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.EvaluationStatistics;
+import io.github.wistefan.dcql.QueryResult;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlCredentialSetCacheTest extends DcqlTest {
+
+    private static final String MULTI_SET_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } },
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } }
+              ],
+              "credential_sets": [
+                { "purpose": "first", "options": [["pid"], ["pid", "mvrc"], ["mvrc"]] },
+                { "purpose": "second", "options": [["mdl", "pid"], ["mvrc", "mdl"]] }
+              ]
+            }
+            """;
+
+    @Test
+    @DisplayName("Credential queries referenced in multiple options are evaluated only once per request.")
+    void credentialQueriesAreEvaluatedOnce() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(MULTI_SET_QUERY, DcqlQuery.class);
+
+        QueryResult queryResult = dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC));
+
+        assertTrue(queryResult.success());
+        assertEquals(List.of(MDOC_MVRC), queryResult.credentials().get("first"));
+        assertEquals(List.of(MDOC_MVRC), queryResult.credentials().get("second"));
+
+        EvaluationStatistics statistics = dcqlEvaluator.getStatistics();
+        // pid, mvrc and mdl are evaluated, all other references are answered from the cache
+        assertEquals(3, statistics.getCredentialQueryEvaluations());
+        assertEquals(4, statistics.getCredentialQueryCacheHits());
+    }
+
+    @Test
+    @DisplayName("Cached results are not shared between requests.")
+    void cacheIsPerRequest() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(MULTI_SET_QUERY, DcqlQuery.class);
+
+        assertTrue(dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC)).success());
+        assertFalse(dcqlEvaluator.evaluateDCQLQuery(query, List.of()).success());
+
+        assertEquals(5, dcqlEvaluator.getStatistics().getCredentialQueryEvaluations());
+        dcqlEvaluator.getStatistics().reset();
+        assertEquals(0, dcqlEvaluator.getStatistics().getCredentialQueryEvaluations());
+        assertEquals(0, dcqlEvaluator.getStatistics().getCredentialQueryCacheHits());
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.*;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlParallelQueryTest extends DcqlTest {
+
+    private static final String CLAIMS_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "citizen",
+                  "format": "jwt_vc_json",
+                  "multiple": true,
+                  "claims": [
+                    { "path": ["credentialSubject", "nationality"], "values": ["British"] },
+                    { "path": ["credentialSubject", "age"] }
+                  ]
+                },
+                {
+                  "id": "mvrc",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.7367.1.mVRC" }
+                }
+              ]
+            }
+            """;
+
+    private static final String CREDENTIAL_SET_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } },
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } }
+              ],
+              "credential_sets": [
+                { "purpose": "first", "options": [["pid"], ["pid", "mvrc"], ["mvrc"]] },
+                { "purpose": "second", "options": [["mdl", "pid"], ["mvrc", "mdl"]], "required": false }
+              ]
+            }
+            """;
+
+    private static final String UNREFERENCED_QUERY = """
+            {
+              "credentials": [
+                { "id": "unused", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } },
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } }
+              ],
+              "credential_sets": [
+                { "purpose": "vehicle", "options": [["mvrc"]] },
+                { "purpose": "identity", "options": [["mdl"]], "required": false }
+              ]
+            }
+            """;
+
+    private static final String FALLBACK_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } },
+                { "id": "pid", "format": "mso_mdoc", "meta": { "doctype_value": "eu.europa.ec.eudi.pid.1" } }
+              ],
+              "credential_sets": [
+                { "purpose": "vehicle", "options": [["mvrc"], ["pid"]] },
+                { "purpose": "identity", "options": [["mdl"], ["pid"]] }
+              ]
+            }
+            """;
+
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    @AfterEach
+    public void shutdown() {
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    @DisplayName("Large lists are split across the executor, with the same results in the same order.")
+    void parallelEvaluationEqualsSequential() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(CLAIMS_QUERY, DcqlQuery.class);
+        List<Credential> credentials = citizens(5000);
+
+        QueryResult sequential = dcqlEvaluator.evaluateDCQLQuery(query, credentials);
+        QueryResult parallel = parallelEvaluator(executor(new ForkJoinPool(4)), 512).evaluateDCQLQuery(query, credentials);
+
+        assertTrue(sequential.success());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    @DisplayName("A single-threaded executor does not block evaluations waiting for their chunks.")
+    void boundedExecutorDoesNotDeadlock() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(CLAIMS_QUERY, DcqlQuery.class);
+        List<Credential> credentials = citizens(2000);
+
+        QueryResult parallel = parallelEvaluator(executor(Executors.newFixedThreadPool(1)), 512).evaluateDCQLQuery(query, credentials);
+
+        assertEquals(dcqlEvaluator.evaluateDCQLQuery(query, credentials), parallel);
+    }
+
+    @Test
+    @DisplayName("Unsatisfiable queries fail like the sequential evaluation.")
+    void parallelEvaluationFails() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(CLAIMS_QUERY, DcqlQuery.class);
+
+        QueryResult parallel = parallelEvaluator(executor(new ForkJoinPool(4)), 512).evaluateDCQLQuery(query, citizens(10));
+
+        assertFalse(parallel.success());
+    }
+
+    @Test
+    @DisplayName("Credential sets are resolved like the sequential evaluation.")
+    void parallelCredentialSets() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(CREDENTIAL_SET_QUERY, DcqlQuery.class);
+
+        QueryResult parallel = parallelEvaluator(executor(new ForkJoinPool(4)), 512).evaluateDCQLQuery(query, List.of(MDOC_MVRC));
+
+        assertTrue(parallel.success());
+        assertEquals(dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC)), parallel);
+    }
+
+    @Test
+    @DisplayName("Credential queries that are not referenced by any set are not evaluated.")
+    void unreferencedQueriesAreNotForked() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(UNREFERENCED_QUERY, DcqlQuery.class);
+        DCQLEvaluator parallelEvaluator = parallelEvaluator(executor(new ForkJoinPool(4)), 512);
+
+        QueryResult parallel = parallelEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC, MDOC_MDL));
+
+        assertEquals(dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC, MDOC_MDL)), parallel);
+        assertEquals(2, parallelEvaluator.getStatistics().getCredentialQueryEvaluations());
+    }
+
+    @Test
+    @DisplayName("Later options are only evaluated if the previous ones are not fulfilled.")
+    void fallbackOptionsAreForkedLazily() throws JsonProcessingException {
+        DcqlQuery query = OBJECT_MAPPER.readValue(FALLBACK_QUERY, DcqlQuery.class);
+        DCQLEvaluator parallelEvaluator = parallelEvaluator(executor(new ForkJoinPool(4)), 512);
+
+        assertTrue(parallelEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MVRC, MDOC_MDL)).success());
+        // the pid of the second options is never started
+        assertEquals(2, parallelEvaluator.getStatistics().getCredentialQueryEvaluations());
+    }
+
+    private ExecutorService executor(ExecutorService executorService) {
+        executors.add(executorService);
+        return executorService;
+    }
+
+    private static DCQLEvaluator parallelEvaluator(ExecutorService executorService, int parallelThreshold) {
+        return new DCQLEvaluator(List.of(new JwtCredentialEvaluator(), new MDocCredentialEvaluator()),
+                EvaluationOptions.DEFAULT
+                        .withExecutor(executorService)
+                        .withParallelThreshold(parallelThreshold));
+    }
+
+    // every third citizen is british, the mvrc is contained to fulfill the second query
+    private static List<Credential> citizens(int count) {
+        List<Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> subject = Map.of(
+                    "id", "did:key:citizen-" + i,
+                    "nationality", i % 3 == 0 ? "British" : "Betelgeusian",
+                    "age", i % 100);
+            credentials.add(new Credential(CredentialFormat.JWT_VC_JSON, new JwtCredential(null, Map.of(), Map.of(
+                    "vc", Map.of("type", List.of("VerifiableCredential"), "credentialSubject", subject)), null)));
+        }
+        if (count > 10) {
+            credentials.add(MDOC_MVRC);
+        }
+        return credentials;
+    }
+}
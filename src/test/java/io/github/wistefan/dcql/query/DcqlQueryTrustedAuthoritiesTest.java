@@ -12,10 +12,14 @@ import io.github.wistefan.dcql.model.credential.MDocHeaders;
 import io.github.wistefan.dcql.model.credential.SdJwtCredential;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -137,4 +141,23 @@ class DcqlQueryTrustedAuthoritiesTest extends DcqlTest {
         assertEquals(1, credentialsResult.credentials().get("credentials").size());
     }
 
+    @ParameterizedTest
+    @MethodSource("unsupportedTrustedAuthorities")
+    @DisplayName("Queries for unsupported trusted authorities are rejected when compiling, independent of the credentials.")
+    void unsupportedTrustedAuthoritiesAreRejected(Map<String, Object> trustedAuthority) {
+        DcqlQuery query = OBJECT_MAPPER.convertValue(Map.of("credentials", List.of(Map.of(
+                "id", "my_credential",
+                "format", "mso_mdoc",
+                "meta", Map.of("doctype_value", "org.iso.7367.1.mVRC"),
+                "trusted_authorities", List.of(trustedAuthority)))), DcqlQuery.class);
+
+        assertThrows(UnsupportedOperationException.class, () -> dcqlEvaluator.compile(query));
+        // the meta stage would reject all credentials before reaching the trusted authority
+        assertThrows(UnsupportedOperationException.class, () -> dcqlEvaluator.evaluateDCQLQuery(query, List.of(MDOC_MDL)));
+    }
+
+    private static Stream<Arguments> unsupportedTrustedAuthorities() {
+        return Stream.of(Arguments.of(ETSI_TL_AUTHORITY), Arguments.of(OPENID_FEDERATION_AUTHORITY));
+    }
+
 }
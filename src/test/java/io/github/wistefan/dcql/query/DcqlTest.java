@@ -8,9 +8,11 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import io.github.wistefan.dcql.*;
 import io.github.wistefan.dcql.helper.CredentialFormatDeserializer;
 import io.github.wistefan.dcql.helper.TrustedAuthorityTypeDeserializer;
+import io.github.wistefan.dcql.model.Credential;
 import io.github.wistefan.dcql.model.CredentialFormat;
 import io.github.wistefan.dcql.model.TrustedAuthorityType;
 import io.github.wistefan.dcql.model.credential.Disclosure;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
 import org.bouncycastle.asn1.x509.*;
 import org.bouncycastle.cert.X509ExtensionUtils;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
@@ -31,6 +33,7 @@ import java.security.cert.X509Certificate;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public abstract class DcqlTest {
 
@@ -47,6 +50,17 @@ public abstract class DcqlTest {
 
     public static final KeyPair TEST_KEY = generateTestKeyPair();
 
+    // credentials shared by the query tests, matching a "org.iso.7367.1.mVRC" or "org.iso.18013.5.1.mDL" doctype query
+    public static final Credential MDOC_MVRC = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of("org.iso.7367.1", Map.of("vehicle_holder", "Martin Auer"))
+    )));
+
+    public static final Credential MDOC_MDL = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.18013.5.1.mDL",
+            "namespaces", Map.of("org.iso.18013.5.1", Map.of("first_name", "Martin"))
+    )));
+
     protected DCQLEvaluator dcqlEvaluator;
 
     @BeforeEach
@@ -140,4 +154,13 @@ public abstract class DcqlTest {
         }
     }
 
+    public static Disclosure getArrayElementDisclosure(String salt, Object value) {
+        try {
+            byte[] encoded = new ObjectMapper().writeValueAsBytes(List.of(salt, value));
+            return new Disclosure(salt, null, value, Base64.getUrlEncoder().encodeToString(encoded), "sha-256");
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
@@ -0,0 +1,178 @@
+package io.github.wistefan.dcql.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.wistefan.dcql.CredentialWallet;
+import io.github.wistefan.dcql.QueryResult;
+import io.github.wistefan.dcql.WalletIndex;
+import io.github.wistefan.dcql.model.Credential;
+import io.github.wistefan.dcql.model.CredentialFormat;
+import io.github.wistefan.dcql.model.DcqlQuery;
+import io.github.wistefan.dcql.model.credential.JwtCredential;
+import io.github.wistefan.dcql.model.credential.MDocCredential;
+import io.github.wistefan.dcql.model.credential.MDocHeaders;
+import io.github.wistefan.dcql.model.credential.SdJwtCredential;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DcqlWalletQueryTest extends DcqlTest {
+
+    private static final String MDOC_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "mvrc",
+                  "format": "mso_mdoc",
+                  "meta": { "doctype_value": "org.iso.7367.1.mVRC" },
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"] } ]
+                }
+              ]
+            }
+            """;
+
+    private static final String MDOC_VALUES_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "mvrc",
+                  "format": "mso_mdoc",
+                  "claims": [
+                    { "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer", "Arthur Dent"] },
+                    { "path": ["org.iso.7367.1", "registration_number"] }
+                  ]
+                }
+              ]
+            }
+            """;
+
+    // only claims with values, thus completely resolved by the claim value index
+    private static final String MDOC_ONLY_VALUES_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "mvrc",
+                  "format": "mso_mdoc",
+                  "multiple": true,
+                  "claims": [ { "path": ["org.iso.7367.1", "vehicle_holder"], "values": ["Martin Auer", "Arthur Dent"] } ]
+                }
+              ]
+            }
+            """;
+
+    private static final String SD_JWT_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "pid",
+                  "format": "dc+sd-jwt",
+                  "meta": { "vct_values": ["urn:eu.europa.ec.eudi:pid:1"] },
+                  "claims": [ { "path": ["given_name"] } ]
+                }
+              ]
+            }
+            """;
+
+    private static final String MDOC_AKI_QUERY = """
+            {
+              "credentials": [
+                {
+                  "id": "mvrc",
+                  "format": "mso_mdoc",
+                  "trusted_authorities": [ { "type": "aki", "values": ["%s"] } ]
+                }
+              ]
+            }
+            """.formatted(Base64.getUrlEncoder().encodeToString(generateTestAki(TEST_KEY).getKeyIdentifier()));
+
+    private static final String SET_QUERY = """
+            {
+              "credentials": [
+                { "id": "mvrc", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.7367.1.mVRC" } },
+                { "id": "pid", "format": "dc+sd-jwt", "meta": { "vct_values": ["urn:eu.europa.ec.eudi:pid:1"] } },
+                { "id": "mdl", "format": "mso_mdoc", "meta": { "doctype_value": "org.iso.18013.5.1.mDL" } }
+              ],
+              "credential_sets": [
+                { "purpose": "identity", "options": [["mdl"], ["pid"]] },
+                { "purpose": "vehicle", "options": [["mvrc"]], "required": false }
+              ]
+            }
+            """;
+
+    private static final Credential MDOC_MVRC_NO_HOLDER = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of("org.iso.7367.1", Map.of("registration_number", "HH-MA-42"))
+    )));
+
+    private static final Credential MDOC_MVRC_FULL = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null, null, Map.of(
+            "docType", "org.iso.7367.1.mVRC",
+            "namespaces", Map.of("org.iso.7367.1", Map.of("registration_number", "HH-AD-42", "vehicle_holder", "Arthur Dent"))
+    )));
+
+    private static final Credential MDOC_MVRC_TRUSTED = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null,
+            new MDocHeaders(null, List.of(generateTestCertificate(TEST_KEY))), Map.of("docType", "org.iso.7367.1.mVRC")));
+
+    private static final Credential MDOC_MVRC_UNTRUSTED = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null,
+            new MDocHeaders(null, List.of(generateTestCertificate(generateTestKeyPair()))), Map.of("docType", "org.iso.7367.1.mVRC")));
+
+    private static final Credential MDOC_MVRC_NO_X5C = new Credential(CredentialFormat.MSO_MDOC, new MDocCredential(null,
+            new MDocHeaders(null, List.of()), Map.of("docType", "org.iso.7367.1.mVRC")));
+
+    private static final Credential SD_JWT_PID = new Credential(CredentialFormat.DC_SD_JWT, new SdJwtCredential(null,
+            new JwtCredential(null, Map.of(), Map.of(
+                    "vct", "urn:eu.europa.ec.eudi:pid:1",
+                    "_sd", List.of(getDisclosure("salt", "given_name", "Arthur").getSdHash())), null),
+            List.of(getDisclosure("salt", "given_name", "Arthur"))));
+
+    @ParameterizedTest
+    @MethodSource("walletArgs")
+    public void testWalletEvaluationEqualsListEvaluation(String query, List<Credential> credentials) throws JsonProcessingException {
+        DcqlQuery dcqlQuery = OBJECT_MAPPER.readValue(query, DcqlQuery.class);
+
+        QueryResult listResult = dcqlEvaluator.evaluateDCQLQuery(dcqlQuery, credentials);
+        assertSameResult(listResult, dcqlEvaluator.evaluateDCQLQuery(dcqlQuery, new CredentialWallet(credentials)));
+        assertSameResult(listResult, dcqlEvaluator.evaluateDCQLQuery(dcqlQuery, new CredentialWallet(credentials, EnumSet.allOf(WalletIndex.class))));
+    }
+
+    private static void assertSameResult(QueryResult expected, QueryResult actual) {
+        assertEquals(expected.success(), actual.success());
+        assertEquals(expected.credentials().keySet(), actual.credentials().keySet());
+        expected.credentials().forEach((key, value) ->
+                assertEquals(describe(value), describe(actual.credentials().get(key))));
+    }
+
+    // sd-jwt credentials are copied with the selected disclosures, thus only their contents can be compared
+    private static Set<List<Object>> describe(List<Credential> credentials) {
+        return credentials.stream()
+                .map(credential -> credential.getRawCredential() instanceof SdJwtCredential sdJwtCredential ?
+                        List.<Object>of(credential.getCredentialFormat(), sdJwtCredential.getJwtCredential(), sdJwtCredential.getDisclosures()) :
+                        List.<Object>of(credential.getCredentialFormat(), credential.getRawCredential()))
+                .collect(Collectors.toSet());
+    }
+
+    public static Stream<Arguments> walletArgs() {
+        return Stream.of(
+                Arguments.of(MDOC_QUERY, List.of(MDOC_MDL, MDOC_MVRC_NO_HOLDER, MDOC_MVRC, SD_JWT_PID)),
+                Arguments.of(MDOC_QUERY, List.of(MDOC_MDL, MDOC_MVRC_NO_HOLDER)),
+                Arguments.of(MDOC_VALUES_QUERY, List.of(MDOC_MVRC, MDOC_MVRC_NO_HOLDER, MDOC_MVRC_FULL)),
+                Arguments.of(MDOC_VALUES_QUERY, List.of(MDOC_MVRC, MDOC_MVRC_NO_HOLDER)),
+                Arguments.of(MDOC_ONLY_VALUES_QUERY, List.of(MDOC_MVRC, MDOC_MVRC_NO_HOLDER, MDOC_MDL, MDOC_MVRC_FULL)),
+                Arguments.of(MDOC_ONLY_VALUES_QUERY, List.of(MDOC_MVRC_NO_HOLDER, MDOC_MDL)),
+                Arguments.of(SD_JWT_QUERY, List.of(MDOC_MDL, SD_JWT_PID)),
+                Arguments.of(SD_JWT_QUERY, List.of(MDOC_MDL)),
+                Arguments.of(MDOC_AKI_QUERY, List.of(MDOC_MVRC_UNTRUSTED, MDOC_MVRC_TRUSTED, MDOC_MVRC_NO_X5C)),
+                Arguments.of(MDOC_AKI_QUERY, List.of(MDOC_MVRC_UNTRUSTED, MDOC_MVRC_NO_X5C)),
+                Arguments.of(SET_QUERY, List.of(MDOC_MVRC, SD_JWT_PID)),
+                Arguments.of(SET_QUERY, List.of(MDOC_MDL, MDOC_MVRC, SD_JWT_PID)),
+                Arguments.of(SET_QUERY, List.of(MDOC_MVRC)));
+    }
+}